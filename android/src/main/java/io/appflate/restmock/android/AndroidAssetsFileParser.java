@@ -21,12 +21,13 @@ import android.content.Context;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 
-import io.appflate.restmock.RESTMockFileParser;
+import io.appflate.restmock.RESTMockBinaryFileParser;
+import io.appflate.restmock.utils.RestMockUtils;
 
 /**
  * Created by andrzejchm on 21/04/16.
  */
-public class AndroidAssetsFileParser implements RESTMockFileParser {
+public class AndroidAssetsFileParser implements RESTMockBinaryFileParser {
     public static final String UTF_8 = "UTF-8";
     private Context testContext;
 
@@ -56,4 +57,9 @@ public class AndroidAssetsFileParser implements RESTMockFileParser {
             }
         }
     }
+
+    @Override
+    public byte[] readBytes(String filePath) throws Exception {
+        return RestMockUtils.readBytes(testContext.getAssets().open(filePath));
+    }
 }
@@ -19,18 +19,22 @@ package io.appflate.restmock.android;
 
 import android.app.Application;
 
-import java.io.File;
-import java.net.URL;
-import java.util.Scanner;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
 
+import io.appflate.restmock.RESTMockBinaryFileParser;
 import io.appflate.restmock.RESTMockFileParser;
+import io.appflate.restmock.utils.RestMockUtils;
 
 /**
  * An implementation of {@link RESTMockFileParser} that allows the retrieval and parsing of files on
  * the local filesystem. This does require an Android virtual file system to be set up, so it can be
  * used in lieu of the {@link AndroidAssetsFileParser} when running within Unit Tests.
  */
-public class AndroidLocalFileParser implements RESTMockFileParser {
+public class AndroidLocalFileParser implements RESTMockBinaryFileParser {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
   private Application application;
 
   public AndroidLocalFileParser(Application application) {
@@ -39,21 +43,16 @@ public class AndroidLocalFileParser implements RESTMockFileParser {
 
   @Override
   public String readJsonFile(String jsonFilePath) throws Exception {
+    return new String(readBytes(jsonFilePath), UTF_8);
+  }
+
+  @Override
+  public byte[] readBytes(String filePath) throws Exception {
     ClassLoader classLoader = application.getClass().getClassLoader();
-    URL resource = classLoader.getResource(jsonFilePath);
-    File file = new File(resource.getPath());
-
-    StringBuilder fileContents = new StringBuilder((int) file.length());
-    Scanner scanner = new Scanner(file, "UTF-8");
-    String lineSeparator = System.getProperty("line.separator");
-
-    try {
-      while (scanner.hasNextLine()) {
-        fileContents.append(scanner.nextLine()).append(lineSeparator);
-      }
-      return fileContents.toString();
-    } finally {
-      scanner.close();
+    InputStream resource = classLoader.getResourceAsStream(filePath);
+    if (resource == null) {
+      throw new FileNotFoundException("Resource not found: " + filePath);
     }
+    return RestMockUtils.readBytes(resource);
   }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import okhttp3.mockwebserver.MockResponse;
+import okio.Buffer;
+import okio.ByteString;
+
+/**
+ * Content-addressed store of response bodies, keyed by the SHA-256 of their bytes. Responses with identical bodies get the same
+ * stored {@link Buffer}, whose {@link Buffer#clone() clones} share its segments, so each distinct body is held in memory once,
+ * regardless of how many mocks return it.
+ * <p>
+ * Stored bodies are reference counted: each {@link #intern(MockResponse)} should be paired with a {@link #release(ByteString)} once
+ * the response is no longer returned by any mock, and a body is dropped from the store when its last reference is released.
+ * Bodies are kept on the heap, as MockWebServer writes responses from okio {@link Buffer}s, which would copy any off-heap body
+ * back to the heap for every response.
+ */
+final class BodyStore {
+
+    private final Map<ByteString, StoredBody> bodies = new HashMap<>();
+
+    /**
+     * Replaces the {@code response}'s body with the stored one with the same contents, storing it first if there is none. Chunked
+     * bodies are left as they are, since setting them again would replace their {@code Transfer-Encoding} with a
+     * {@code Content-Length}.
+     *
+     * @return key of the stored body, which should be {@link #release(ByteString) released} once the response is no longer used, or
+     * null if the body wasn't stored
+     */
+    ByteString intern(MockResponse response) {
+        Buffer body = response.getBody();
+        if (body == null || body.size() == 0 || response.getHeaders().get("Transfer-Encoding") != null) {
+            return null;
+        }
+        ByteString key = body.sha256();
+        Buffer stored;
+        synchronized (bodies) {
+            StoredBody storedBody = bodies.get(key);
+            if (storedBody == null) {
+                bodies.put(key, new StoredBody(body));
+                return key;
+            }
+            storedBody.references++;
+            stored = storedBody.body;
+        }
+        response.setBody(stored);
+        return key;
+    }
+
+    /**
+     * Releases a reference to the body stored under the {@code key}, dropping the body once it has no more references.
+     */
+    void release(ByteString key) {
+        synchronized (bodies) {
+            StoredBody storedBody = bodies.get(key);
+            if (storedBody != null && --storedBody.references == 0) {
+                bodies.remove(key);
+            }
+        }
+    }
+
+    int size() {
+        synchronized (bodies) {
+            return bodies.size();
+        }
+    }
+
+    void clear() {
+        synchronized (bodies) {
+            bodies.clear();
+        }
+    }
+
+    private static final class StoredBody {
+
+        final Buffer body;
+        int references = 1;
+
+        StoredBody(Buffer body) {
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A {@link RESTMockFileParser} decorator which keeps contents of files read by another {@code RESTMockFileParser} in memory, so
+ * that files returned by many mocks are read only once. It can wrap any {@code RESTMockFileParser}, f.e. {@link JVMFileParser} or the
+ * Android ones:
+ * <pre>
+ * RESTMockServerStarter.startSync(new CachingFileParser(new AndroidAssetsFileParser(getContext()), 32 * 1024 * 1024));
+ * </pre>
+ * Once contents of the cached files take more than the given budget, the least recently used ones are evicted.
+ * <p>Each file is cached once, no matter how it is read. If the wrapped parser is a {@link RESTMockBinaryFileParser}, its bytes
+ * are cached and {@link #readJsonFile(String)} decodes them as UTF-8, keeping their line endings intact. Otherwise the text is
+ * cached and {@link #readBytes(String)} encodes it as UTF-8.</p>
+ */
+public class CachingFileParser implements RESTMockBinaryFileParser {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final RESTMockFileParser delegate;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Object> contents = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+
+    /**
+     * @param delegate {@code RESTMockFileParser} reading the files
+     * @param maxBytes maximum size of the cached contents, in bytes
+     */
+    public CachingFileParser(RESTMockFileParser delegate, long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes should not be negative! is: " + maxBytes);
+        }
+        this.delegate = delegate;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public String readJsonFile(String jsonFilePath) throws Exception {
+        if (delegate instanceof RESTMockBinaryFileParser) {
+            byte[] fileContents = readBytes(jsonFilePath);
+            return fileContents != null ? new String(fileContents, UTF_8) : null;
+        }
+        synchronized (contents) {
+            Object cached = contents.get(jsonFilePath);
+            if (cached != null) {
+                return (String) cached;
+            }
+        }
+        String fileContents = delegate.readJsonFile(jsonFilePath);
+        if (fileContents != null) {
+            put(jsonFilePath, fileContents, 2L * fileContents.length());
+        }
+        return fileContents;
+    }
+
+    @Override
+    public byte[] readBytes(String filePath) throws Exception {
+        if (!(delegate instanceof RESTMockBinaryFileParser)) {
+            String fileContents = readJsonFile(filePath);
+            return fileContents != null ? fileContents.getBytes(UTF_8) : null;
+        }
+        synchronized (contents) {
+            Object cached = contents.get(filePath);
+            if (cached != null) {
+                return (byte[]) cached;
+            }
+        }
+        byte[] fileContents = ((RESTMockBinaryFileParser) delegate).readBytes(filePath);
+        if (fileContents != null) {
+            put(filePath, fileContents, fileContents.length);
+        }
+        return fileContents;
+    }
+
+    private void put(String filePath, Object fileContents, long size) {
+        synchronized (contents) {
+            Object previous = contents.remove(filePath);
+            if (previous != null) {
+                cachedBytes -= sizeOf(previous);
+            }
+            if (size > maxBytes) {
+                return;
+            }
+            contents.put(filePath, fileContents);
+            cachedBytes += size;
+            Iterator<Object> eldest = contents.values().iterator();
+            while (cachedBytes > maxBytes) {
+                cachedBytes -= sizeOf(eldest.next());
+                eldest.remove();
+            }
+        }
+    }
+
+    private static long sizeOf(Object fileContents) {
+        return fileContents instanceof byte[] ? ((byte[]) fileContents).length : 2L * ((String) fileContents).length();
+    }
+
+    /**
+     * @return size of the currently cached contents, in bytes
+     */
+    public long getCachedBytes() {
+        synchronized (contents) {
+            return cachedBytes;
+        }
+    }
+
+    /**
+     * Removes all of the cached contents, so that files are read again, f.e. after they have changed.
+     */
+    public void clear() {
+        synchronized (contents) {
+            contents.clear();
+            cachedBytes = 0;
+        }
+    }
+}
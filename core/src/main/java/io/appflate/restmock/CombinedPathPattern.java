@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Merges a number of path patterns into a single alternation, so one pass of the regex engine over a path tells which of the patterns
+ * is the first one to match it. Patterns that can't be safely embedded in the alternation (f.e. using back references or named groups)
+ * are reported as not combinable and have to be evaluated on their own.
+ */
+final class CombinedPathPattern {
+
+    private static final Pattern UNSAFE_CONSTRUCT = Pattern.compile("\\\\[1-9]|\\\\k<|\\(\\?<[a-zA-Z]|\\(\\?[a-zA-Z]*x");
+
+    private final Pattern pattern;
+    private final int[] alternativeGroups;
+
+    private CombinedPathPattern(Pattern pattern, int[] alternativeGroups) {
+        this.pattern = pattern;
+        this.alternativeGroups = alternativeGroups;
+    }
+
+    /**
+     * @param pattern pattern to check
+     * @return true if {@code pattern} can be embedded as an alternative without changing its meaning
+     */
+    static boolean isCombinable(Pattern pattern) {
+        if (pattern.flags() != 0 || UNSAFE_CONSTRUCT.matcher(pattern.pattern()).find()) {
+            return false;
+        }
+        try {
+            Pattern wrapped = Pattern.compile("(" + pattern.pattern() + ")");
+            return groupCount(wrapped) == groupCount(pattern) + 1;
+        } catch (PatternSyntaxException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param patterns combinable patterns, see {@link #isCombinable(Pattern)}
+     * @return combined pattern, or {@code null} if the patterns couldn't be combined
+     */
+    static CombinedPathPattern combine(List<Pattern> patterns) {
+        StringBuilder alternation = new StringBuilder("(?:");
+        int[] alternativeGroups = new int[patterns.size()];
+        int group = 1;
+        for (int i = 0; i < patterns.size(); i++) {
+            Pattern pattern = patterns.get(i);
+            if (i > 0) {
+                alternation.append('|');
+            }
+            alternation.append('(').append(pattern.pattern()).append(')');
+            alternativeGroups[i] = group;
+            group += groupCount(pattern) + 1;
+        }
+        alternation.append(')');
+        try {
+            Pattern combined = Pattern.compile(alternation.toString());
+            if (groupCount(combined) != group - 1) {
+                return null;
+            }
+            return new CombinedPathPattern(combined, alternativeGroups);
+        } catch (PatternSyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param path lower-cased path to match
+     * @return index of the first pattern matching the whole {@code path}, or {@code -1} if none of them matches it
+     */
+    int firstMatch(CharSequence path) {
+        Matcher matcher = pattern.matcher(path);
+        if (!matcher.matches()) {
+            return -1;
+        }
+        for (int i = 0; i < alternativeGroups.length; i++) {
+            if (matcher.start(alternativeGroups[i]) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int groupCount(Pattern pattern) {
+        return pattern.matcher("").groupCount();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+import okio.Buffer;
+import okio.DeflaterSink;
+import okio.GzipSink;
+import okio.Sink;
+
+/**
+ * Content codings supported for compressed responses, see {@link MatchableCall#withCompression(boolean)}.
+ */
+enum ContentEncoding {
+    GZIP("gzip"),
+    DEFLATE("deflate");
+
+    final String token;
+
+    ContentEncoding(String token) {
+        this.token = token;
+    }
+
+    /**
+     * @return compressed copy of the {@code body}, which is left unchanged
+     */
+    Buffer encode(Buffer body) {
+        Buffer encoded = new Buffer();
+        Sink sink = this == GZIP ? new GzipSink(encoded) : new DeflaterSink(encoded, new Deflater());
+        try {
+            Buffer source = body.clone();
+            sink.write(source, source.size());
+            sink.close();
+        } catch (IOException e) {
+            // writing to a Buffer doesn't throw
+            throw new IllegalStateException(e);
+        }
+        return encoded;
+    }
+
+    /**
+     * Picks the content coding preferred by the given {@code Accept-Encoding} header value: the one with the highest quality value,
+     * {@link #GZIP} if they are equal.
+     *
+     * @return the picked content coding, or {@code null} if none of them is acceptable and the body should be sent as it is
+     */
+    static ContentEncoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        float gzipQuality = -1;
+        float deflateQuality = -1;
+        float wildcardQuality = -1;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String token = parameters[0].trim();
+            float quality = parseQuality(parameters);
+            if (token.equalsIgnoreCase(GZIP.token) || token.equalsIgnoreCase("x-gzip")) {
+                gzipQuality = Math.max(gzipQuality, quality);
+            } else if (token.equalsIgnoreCase(DEFLATE.token)) {
+                deflateQuality = Math.max(deflateQuality, quality);
+            } else if (token.equals("*")) {
+                wildcardQuality = quality;
+            }
+        }
+        if (gzipQuality < 0) {
+            gzipQuality = wildcardQuality;
+        }
+        if (deflateQuality < 0) {
+            deflateQuality = wildcardQuality;
+        }
+        if (gzipQuality <= 0 && deflateQuality <= 0) {
+            return null;
+        }
+        return gzipQuality >= deflateQuality ? GZIP : DEFLATE;
+    }
+
+    private static float parseQuality(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                try {
+                    return Float.parseFloat(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Bounded cache of matching results of {@link io.appflate.restmock.utils.RequestMatcher#isCacheable() cacheable} calls, keyed by the
+ * request's shape: its method, path (along with the query) and header names.
+ * <p>
+ * Each result is stamped with the {@link MatchableCallsRegistry#getVersion() version} of the registry it was computed with, and is
+ * only returned for that version, so that results of the registry's previous snapshots are never used. Once the cache is full, the
+ * least recently used result is evicted.
+ */
+final class DispatchCache {
+
+    private final Map<String, CachedMatch> entries;
+
+    DispatchCache(final int maxSize) {
+        this.entries = new LinkedHashMap<String, CachedMatch>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedMatch> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    static String keyOf(RecordedRequest request) {
+        StringBuilder key = new StringBuilder(64).append(request.getMethod()).append(' ').append(request.getPath());
+        for (String headerName : request.getHeaders().names()) {
+            key.append('\n').append(headerName.toLowerCase(Locale.US));
+        }
+        return key.toString();
+    }
+
+    List<MatchableCall> get(long version, String key) {
+        CachedMatch entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        return entry != null && entry.version == version ? entry.matchedCalls : null;
+    }
+
+    void put(long version, String key, List<MatchableCall> matchedCalls) {
+        synchronized (entries) {
+            entries.put(key, new CachedMatch(version, matchedCalls));
+        }
+    }
+
+    void invalidate() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static final class CachedMatch {
+
+        final long version;
+        final List<MatchableCall> matchedCalls;
+
+        CachedMatch(long version, List<MatchableCall> matchedCalls) {
+            this.version = version;
+            this.matchedCalls = matchedCalls;
+        }
+    }
+}
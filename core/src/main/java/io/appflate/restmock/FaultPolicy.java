@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import java.util.Random;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.SocketPolicy;
+
+/**
+ * Transport-level fault, injected into responses with the given probability, see {@link MatchableCall#withFaults(FaultPolicy...)}
+ * and {@link RESTMockOptions.Builder#faultPolicies(FaultPolicy...)}. Faults are injected by setting a {@link SocketPolicy} of the
+ * response, responses which have one set already are left as they are.
+ * <p>
+ * Policies sample with their own random number generator, use {@link #withSeed(long)} to make the injected faults reproducible.
+ */
+public final class FaultPolicy {
+
+    private final SocketPolicy socketPolicy;
+    private final double probability;
+    private final Random random;
+
+    private FaultPolicy(SocketPolicy socketPolicy, double probability, Random random) {
+        if (probability < 0 || probability > 1) {
+            throw new IllegalArgumentException("probability should be within [0, 1]! is: " + probability);
+        }
+        this.socketPolicy = socketPolicy;
+        this.probability = probability;
+        this.random = random;
+    }
+
+    /**
+     * @return policy injecting the given {@code socketPolicy} into responses with the given {@code probability}
+     */
+    public static FaultPolicy of(SocketPolicy socketPolicy, double probability) {
+        return new FaultPolicy(socketPolicy, probability, new Random());
+    }
+
+    /**
+     * @return policy closing the connection after reading the request, without sending the response
+     */
+    public static FaultPolicy disconnectAfterRequest(double probability) {
+        return of(SocketPolicy.DISCONNECT_AFTER_REQUEST, probability);
+    }
+
+    /**
+     * @return policy closing the connection after sending the headers and half of the body, so that the body is truncated
+     */
+    public static FaultPolicy disconnectDuringResponseBody(double probability) {
+        return of(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY, probability);
+    }
+
+    /**
+     * @return policy keeping the connection open without ever sending the response
+     */
+    public static FaultPolicy noResponse(double probability) {
+        return of(SocketPolicy.NO_RESPONSE, probability);
+    }
+
+    /**
+     * @return policy closing a keep-alive connection after sending the response, so that the next request sent over it fails
+     */
+    public static FaultPolicy disconnectAtEnd(double probability) {
+        return of(SocketPolicy.DISCONNECT_AT_END, probability);
+    }
+
+    /**
+     * @return copy of this policy, which samples with a random number generator initialized with the given {@code seed}
+     */
+    public FaultPolicy withSeed(long seed) {
+        return new FaultPolicy(socketPolicy, probability, new Random(seed));
+    }
+
+    public SocketPolicy getSocketPolicy() {
+        return socketPolicy;
+    }
+
+    public double getProbability() {
+        return probability;
+    }
+
+    /**
+     * Injects the fault of the first of the {@code policies} which fires into the {@code response}, which must not be shared with
+     * other requests.
+     *
+     * @return whether a fault was injected
+     */
+    static boolean inject(MockResponse response, FaultPolicy[] policies) {
+        if (response.getSocketPolicy() != SocketPolicy.KEEP_OPEN) {
+            return false;
+        }
+        for (FaultPolicy policy : policies) {
+            if (policy.probability > 0 && policy.random.nextDouble() < policy.probability) {
+                response.setSocketPolicy(policy.socketPolicy);
+                return true;
+            }
+        }
+        return false;
+    }
+}
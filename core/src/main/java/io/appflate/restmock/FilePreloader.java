@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads files with a {@link RESTMockFileParser} on a bounded pool of threads, so that missing files are reported before any test
+ * runs, and keeps them in memory for the mocks registered later. When the parser is a {@link CachingFileParser}, the files are kept
+ * in its cache. Otherwise, they are kept by a {@link PreloadedFileParser} wrapping the parser.
+ * <p>
+ * Files are given by their paths. Globs are not supported, because {@code RESTMockFileParser}s can only read a given path and
+ * can't list the files they could read.
+ */
+final class FilePreloader {
+
+    private FilePreloader() {
+    }
+
+    /**
+     * Reads all of the {@code filePaths} and logs their total size and the time it took.
+     *
+     * @return parser which should be used by the mocks to read the files, so that they get the preloaded contents
+     * @throws IOException if any of the files couldn't be read, with the first failure as its cause
+     */
+    static RESTMockFileParser preload(final RESTMockFileParser fileParser, Collection<String> filePaths, int threads) throws IOException {
+        long startNanos = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, filePaths.size())), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "RESTMock file preloader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final Map<String, Object> contents = new ConcurrentHashMap<>();
+        List<Future<Long>> reads = new ArrayList<>(filePaths.size());
+        try {
+            for (final String filePath : filePaths) {
+                reads.add(executor.submit(new Callable<Long>() {
+
+                    @Override
+                    public Long call() throws Exception {
+                        return read(fileParser, filePath, contents);
+                    }
+                }));
+            }
+            long totalBytes = 0;
+            List<String> failedPaths = new ArrayList<>();
+            Throwable firstFailure = null;
+            int i = 0;
+            for (String filePath : filePaths) {
+                try {
+                    totalBytes += reads.get(i++).get();
+                } catch (ExecutionException e) {
+                    RESTMockServer.getLogger().error("## File preload error:\t" + filePath, e.getCause());
+                    failedPaths.add(filePath);
+                    if (firstFailure == null) {
+                        firstFailure = e.getCause();
+                    }
+                }
+            }
+            if (firstFailure != null) {
+                throw new IOException("couldn't preload files: " + failedPaths, firstFailure);
+            }
+            RESTMockServer.getLogger()
+                .log("## Preloaded "
+                    + filePaths.size()
+                    + " files ("
+                    + totalBytes
+                    + " bytes) in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)
+                    + " ms");
+            if (fileParser instanceof CachingFileParser) {
+                return fileParser;
+            }
+            return new PreloadedFileParser(fileParser, contents);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("files preload interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static long read(RESTMockFileParser fileParser, String filePath, Map<String, Object> contents) throws Exception {
+        if (fileParser instanceof RESTMockBinaryFileParser) {
+            byte[] fileContents = ((RESTMockBinaryFileParser) fileParser).readBytes(filePath);
+            if (!(fileParser instanceof CachingFileParser)) {
+                contents.put(filePath, fileContents);
+            }
+            return fileContents.length;
+        }
+        String fileContents = fileParser.readJsonFile(filePath);
+        contents.put(filePath, fileContents);
+        return fileContents.length();
+    }
+}
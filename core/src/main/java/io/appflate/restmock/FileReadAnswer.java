@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import java.io.File;
+import java.io.IOException;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * {@link MockAnswer} returning contents of a file, which is read anew from disk for every request.
+ * <p>
+ * The file is read into the response's body {@link Buffer} without decoding it to a {@code String}. MockWebServer sends responses
+ * from a complete in-memory body, so the whole file is held in memory for every response being sent. It is not kept by the mock
+ * between requests though, unlike files returned with {@link MatchableCall#thenReturnFile(int, String...)}.
+ */
+final class FileReadAnswer implements MockAnswer {
+
+    private final File file;
+    private final int responseCode;
+    private final MatchableCallsRequestDispatcher dispatcher;
+
+    FileReadAnswer(File file, int responseCode, MatchableCallsRequestDispatcher dispatcher) {
+        this.file = file;
+        this.responseCode = responseCode;
+        this.dispatcher = dispatcher;
+    }
+
+    @Override
+    public MockResponse answer(RecordedRequest request) {
+        try {
+            return new MockResponse().setResponseCode(responseCode).setBody(readFile());
+        } catch (IOException e) {
+            RESTMockServer.getLogger().error("<- Response FILE READ ERROR", e);
+            return dispatcher.createErrorResponse(e);
+        }
+    }
+
+    private Buffer readFile() throws IOException {
+        Buffer body = new Buffer();
+        Source source = Okio.source(file);
+        try {
+            body.writeAll(source);
+            return body;
+        } finally {
+            source.close();
+        }
+    }
+}
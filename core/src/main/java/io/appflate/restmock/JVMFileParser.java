@@ -1,31 +1,41 @@
 package io.appflate.restmock;
 
-import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
 import java.net.URL;
-import java.util.Scanner;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import io.appflate.restmock.utils.RestMockUtils;
 
 /**
  * An implementation of {@link RESTMockFileParser} that allows the retrieval and parsing of files on
  * the local filesystem. This does not require an Android dependencies to be set up, so it can be
  * used when running within Unit Tests.
+ * <p>Files are resolved as class path resources. Resources from directories are read in bulk, while the ones packaged in jars
+ * are read from their streams.</p>
  */
-public class JVMFileParser implements RESTMockFileParser {
+public class JVMFileParser implements RESTMockBinaryFileParser {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     @Override
     public String readJsonFile(String jsonFilePath) throws Exception {
-        ClassLoader classLoader = this.getClass().getClassLoader();
-        URL resource = classLoader.getResource(jsonFilePath);
-        File file = new File(resource.getPath());
-        StringBuilder fileContents = new StringBuilder((int)file.length());
-        Scanner scanner = new Scanner(file, "UTF-8");
-        String lineSeparator = System.getProperty("line.separator");
+        return new String(readBytes(jsonFilePath), UTF_8);
+    }
 
-        try {
-            while (scanner.hasNextLine()) {
-                fileContents.append(scanner.nextLine()).append(lineSeparator);
-            }
-            return fileContents.toString();
-        } finally {
-            scanner.close();
+    @Override
+    public byte[] readBytes(String filePath) throws Exception {
+        ClassLoader classLoader = this.getClass().getClassLoader();
+        URL resource = classLoader.getResource(filePath);
+        if (resource == null) {
+            throw new FileNotFoundException("Resource not found: " + filePath);
+        }
+        if ("file".equals(resource.getProtocol())) {
+            return Files.readAllBytes(Paths.get(resource.toURI()));
         }
+        InputStream inputStream = resource.openStream();
+        return RestMockUtils.readBytes(inputStream);
     }
 }
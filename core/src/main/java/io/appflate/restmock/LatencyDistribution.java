@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distribution of delays of a {@link MatchableCall}'s responses, see {@link MatchableCall#delayBody(LatencyDistribution)} and
+ * {@link MatchableCall#delayHeaders(LatencyDistribution)}. A delay is sampled for every response.
+ * <p>
+ * Distributions sample with their own random number generator, use {@link #withSeed(long)} to make the sampled delays
+ * reproducible. Negative samples are treated as no delay.
+ */
+public abstract class LatencyDistribution {
+
+    private final Random random;
+
+    LatencyDistribution(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * @return next delay sampled from this distribution, in milliseconds
+     */
+    public long sampleMillis() {
+        return Math.max(0, Math.round(sample(random)));
+    }
+
+    /**
+     * @return copy of this distribution, which samples delays with a random number generator initialized with the given {@code seed}
+     */
+    public LatencyDistribution withSeed(long seed) {
+        return withRandom(new Random(seed));
+    }
+
+    abstract double sample(Random random);
+
+    abstract LatencyDistribution withRandom(Random random);
+
+    /**
+     * @return distribution of delays uniformly distributed between {@code min} and {@code max}
+     */
+    public static LatencyDistribution uniform(TimeUnit timeUnit, long min, long max) {
+        if (min > max) {
+            throw new IllegalArgumentException("min should not be greater than max! min: " + min + ", max: " + max);
+        }
+        return new Uniform(new Random(), timeUnit.toMillis(min), timeUnit.toMillis(max));
+    }
+
+    /**
+     * @return distribution of delays normally distributed around {@code mean}
+     */
+    public static LatencyDistribution normal(TimeUnit timeUnit, long mean, long standardDeviation) {
+        return new Normal(new Random(), timeUnit.toMillis(mean), timeUnit.toMillis(standardDeviation));
+    }
+
+    /**
+     * @return distribution of delays whose logarithm is normally distributed, with the given {@code median} and the {@code sigma}
+     * standard deviation of the logarithm. It has a long tail, like latencies of real servers usually do.
+     */
+    public static LatencyDistribution logNormal(TimeUnit timeUnit, long median, double sigma) {
+        if (median <= 0) {
+            throw new IllegalArgumentException("median should be positive! is: " + median);
+        }
+        return new LogNormal(new Random(), Math.log(timeUnit.toMillis(median)), sigma);
+    }
+
+    /**
+     * Creates a distribution from measured percentiles of delays, f.e. {@code empirical(MILLISECONDS, new double[] {50, 90, 99},
+     * new long[] {80, 200, 1500})}. Delays between the given percentiles are interpolated linearly, delays below the first and above
+     * the last percentile are equal to the first and the last delay respectively.
+     *
+     * @param percentiles ascending percentiles, from {@code 0} to {@code 100}
+     * @param delays      delays at the {@code percentiles}, in ascending order
+     */
+    public static LatencyDistribution empirical(TimeUnit timeUnit, double[] percentiles, long[] delays) {
+        if (percentiles.length == 0 || percentiles.length != delays.length) {
+            throw new IllegalArgumentException("percentiles and delays should have the same, non-zero length!");
+        }
+        double[] delaysMillis = new double[delays.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            boolean ascending = i == 0 || (percentiles[i] > percentiles[i - 1] && delays[i] >= delays[i - 1]);
+            if (percentiles[i] < 0 || percentiles[i] > 100 || !ascending) {
+                throw new IllegalArgumentException("percentiles should be ascending and within [0, 100], delays should be ascending!");
+            }
+            delaysMillis[i] = timeUnit.toMillis(delays[i]);
+        }
+        return new Empirical(new Random(), percentiles.clone(), delaysMillis);
+    }
+
+    private static final class Uniform extends LatencyDistribution {
+
+        private final long min;
+        private final long max;
+
+        Uniform(Random random, long min, long max) {
+            super(random);
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        double sample(Random random) {
+            return min + random.nextDouble() * (max - min);
+        }
+
+        @Override
+        LatencyDistribution withRandom(Random random) {
+            return new Uniform(random, min, max);
+        }
+    }
+
+    private static final class Normal extends LatencyDistribution {
+
+        private final long mean;
+        private final long standardDeviation;
+
+        Normal(Random random, long mean, long standardDeviation) {
+            super(random);
+            this.mean = mean;
+            this.standardDeviation = standardDeviation;
+        }
+
+        @Override
+        double sample(Random random) {
+            return mean + random.nextGaussian() * standardDeviation;
+        }
+
+        @Override
+        LatencyDistribution withRandom(Random random) {
+            return new Normal(random, mean, standardDeviation);
+        }
+    }
+
+    private static final class LogNormal extends LatencyDistribution {
+
+        private final double mu;
+        private final double sigma;
+
+        LogNormal(Random random, double mu, double sigma) {
+            super(random);
+            this.mu = mu;
+            this.sigma = sigma;
+        }
+
+        @Override
+        double sample(Random random) {
+            return Math.exp(mu + random.nextGaussian() * sigma);
+        }
+
+        @Override
+        LatencyDistribution withRandom(Random random) {
+            return new LogNormal(random, mu, sigma);
+        }
+    }
+
+    private static final class Empirical extends LatencyDistribution {
+
+        private final double[] percentiles;
+        private final double[] delays;
+
+        Empirical(Random random, double[] percentiles, double[] delays) {
+            super(random);
+            this.percentiles = percentiles;
+            this.delays = delays;
+        }
+
+        @Override
+        double sample(Random random) {
+            double percentile = random.nextDouble() * 100;
+            if (percentile <= percentiles[0]) {
+                return delays[0];
+            }
+            for (int i = 1; i < percentiles.length; i++) {
+                if (percentile <= percentiles[i]) {
+                    double fraction = (percentile - percentiles[i - 1]) / (percentiles[i] - percentiles[i - 1]);
+                    return delays[i - 1] + fraction * (delays[i] - delays[i - 1]);
+                }
+            }
+            return delays[delays.length - 1];
+        }
+
+        @Override
+        LatencyDistribution withRandom(Random random) {
+            return new Empirical(random, percentiles, delays);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import io.appflate.restmock.utils.RestMockUtils;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * {@link MockAnswer} returning contents of a file, which is read with {@link RESTMockFileParser} when it is first needed, and then
+ * answered with a {@link ResponseTemplate} of it, compressed by it when requested. A file which cannot be read is answered with
+ * {@link MatchableCallsRequestDispatcher#createErrorResponse(Exception)}, just like an eagerly read one.
+ */
+final class LazyFileAnswer implements TemplatedAnswer {
+
+    private final RESTMockFileParser fileParser;
+    private final String filePath;
+    private final int responseCode;
+    private final MatchableCallsRequestDispatcher dispatcher;
+    private volatile ResponseTemplate template;
+    private boolean released;
+
+    LazyFileAnswer(RESTMockFileParser fileParser, String filePath, int responseCode, MatchableCallsRequestDispatcher dispatcher) {
+        this.fileParser = fileParser;
+        this.filePath = filePath;
+        this.responseCode = responseCode;
+        this.dispatcher = dispatcher;
+    }
+
+    @Override
+    public MockResponse answer(RecordedRequest request) {
+        return resolveTemplate().answer(request);
+    }
+
+    @Override
+    public MockResponse answerCompressed(RecordedRequest request) {
+        return resolveTemplate().answerCompressed(request);
+    }
+
+    private ResponseTemplate resolveTemplate() {
+        ResponseTemplate resolved = template;
+        if (resolved == null) {
+            synchronized (this) {
+                resolved = template;
+                if (resolved == null) {
+                    resolved = new ResponseTemplate(readFile(), dispatcher.getBodyStore());
+                    if (released) {
+                        resolved.release();
+                    }
+                    template = resolved;
+                }
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Releases the file's body from the {@link BodyStore}, see {@link ResponseTemplate#release()}, including a body read after this
+     * call.
+     */
+    @Override
+    public void release() {
+        ResponseTemplate resolved;
+        synchronized (this) {
+            released = true;
+            resolved = template;
+        }
+        if (resolved != null) {
+            resolved.release();
+        }
+    }
+
+    private MockResponse readFile() {
+        try {
+            return RestMockUtils.createResponseFromFile(fileParser, filePath, responseCode);
+        } catch (Exception e) {
+            RESTMockServer.getLogger().error("<- Response FILE READ ERROR", e);
+            return dispatcher.createErrorResponse(e);
+        }
+    }
+}
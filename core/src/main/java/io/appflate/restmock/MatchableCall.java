@@ -18,10 +18,13 @@ package io.appflate.restmock;
 
 import org.hamcrest.Matcher;
 
+import java.io.File;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import io.appflate.restmock.utils.RequestMatcher;
 import io.appflate.restmock.utils.RestMockUtils;
@@ -37,20 +40,21 @@ public class MatchableCall {
     final Matcher<RecordedRequest> requestMatcher;
     private final RESTMockFileParser RESTMockFileParser;
     private MatchableCallsRequestDispatcher dispatcher;
-    private List<MockAnswer> answers;
-    private List<Long> bodyDelays;
-    private List<Long> headerDelays;
-    private int responseIndex;
+    private final AtomicReference<AnswerPlan> plan;
+    private final AtomicLong invocationCount;
+    private volatile int priority;
+    private volatile boolean compression;
+    private volatile LatencyDistribution bodyDelayDistribution;
+    private volatile LatencyDistribution headerDelayDistribution;
+    private volatile FaultPolicy[] faultPolicies = new FaultPolicy[0];
 
     MatchableCall(RESTMockFileParser RESTMockFileParser, Matcher<RecordedRequest> requestMatcher,
                   MatchableCallsRequestDispatcher dispatcher) {
         this.RESTMockFileParser = RESTMockFileParser;
         this.requestMatcher = requestMatcher;
         this.dispatcher = dispatcher;
-        this.answers = new LinkedList<>();
-        this.bodyDelays = new LinkedList<>();
-        this.headerDelays = new LinkedList<>();
-        this.responseIndex = 0;
+        this.plan = new AtomicReference<>(AnswerPlan.EMPTY);
+        this.invocationCount = new AtomicLong();
     }
 
     /**
@@ -123,6 +127,7 @@ public class MatchableCall {
 
     /**
      * Makes this MatchableCall return the {@code jsonFile}'s contents with the {@code responseCode} as a http status code.
+     * Files are read right away, unless {@link RESTMockOptions#isLazyFileLoading()} is enabled.
      *
      * <p>This {@code MatchableCall} will be automatically scheduled within the {@code RESTMockServer} if you want to prevent that, see
      * {@link MatchableCall#dontSet()}</p>
@@ -136,6 +141,13 @@ public class MatchableCall {
      * @return this {@code MatchableCall}
      */
     public MatchableCall thenReturnFile(int responseCode, String... jsonFiles) {
+        if (dispatcher.isLazyFileLoading()) {
+            MockAnswer[] answers = new MockAnswer[jsonFiles.length];
+            for (int i = 0; i < jsonFiles.length; i++) {
+                answers[i] = new LazyFileAnswer(RESTMockFileParser, jsonFiles[i], responseCode, dispatcher);
+            }
+            return thenAnswer(answers);
+        }
         List<MockResponse> responseFromFiles = new ArrayList<>(jsonFiles.length);
         for (String jsonFile : jsonFiles) {
             try {
@@ -148,6 +160,37 @@ public class MatchableCall {
         return thenReturn(responseFromFiles.toArray(new MockResponse[responseFromFiles.size()]));
     }
 
+    /**
+     * same as {@link MatchableCall#thenReadFileOnEachRequest(int, File...)} but with the default {@code responseCode} value set to 200.
+     */
+    public MatchableCall thenReadFileOnEachRequest(File... files) {
+        return thenReadFileOnEachRequest(200, files);
+    }
+
+    /**
+     * Makes this MatchableCall return contents of the {@code files}, read from disk for every request, with the {@code responseCode}
+     * as a http status code. Unlike {@link #thenReturnFile(int, String...)}, files are not kept in memory by this
+     * {@code MatchableCall} between requests. Responses are not streamed though: MockWebServer sends bodies from memory, so the whole
+     * file is read into memory for each response, which holds it until it is sent.
+     *
+     * <p>This {@code MatchableCall} will be automatically scheduled within the {@code RESTMockServer} if you want to prevent that, see
+     * {@link MatchableCall#dontSet()}</p>
+     *
+     * <p>If you specify more than one file, each consecutive call to server will return next file from the list, if number of
+     * requests exceeds number of specified files, the last file will be repeated</p>
+     *
+     * @param responseCode http status code
+     * @param files        files to return
+     * @return this {@code MatchableCall}
+     */
+    public MatchableCall thenReadFileOnEachRequest(int responseCode, File... files) {
+        MockAnswer[] answers = new MockAnswer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            answers[i] = new FileReadAnswer(files[i], responseCode, dispatcher);
+        }
+        return thenAnswer(answers);
+    }
+
     /**
      * @deprecated this method is deprecated, use {@link #delayBody(TimeUnit, long...)} instead.
      */
@@ -168,9 +211,11 @@ public class MatchableCall {
      * @param delays   comma-separated list of delays to apply to consecutive responses
      */
     public MatchableCall delayBody(TimeUnit timeUnit, long... delays) {
-        for (long delay : delays) {
-            this.bodyDelays.add(timeUnit.toMillis(delay));
-        }
+        long[] delaysMillis = toMillis(timeUnit, delays);
+        AnswerPlan current;
+        do {
+            current = plan.get();
+        } while (!plan.compareAndSet(current, current.withBodyDelays(delaysMillis)));
         return this;
     }
 
@@ -186,12 +231,113 @@ public class MatchableCall {
      * @param delays   comma-separated list of delays to apply to consecutive responses
      */
     public MatchableCall delayHeaders(TimeUnit timeUnit, long... delays) {
-        for (long delay : delays) {
-            this.headerDelays.add(timeUnit.toMillis(delay));
+        long[] delaysMillis = toMillis(timeUnit, delays);
+        AnswerPlan current;
+        do {
+            current = plan.get();
+        } while (!plan.compareAndSet(current, current.withHeaderDelays(delaysMillis)));
+        return this;
+    }
+
+    /**
+     * Delays responses' body within this {@link MatchableCall} by delays sampled from the given {@code distribution}, one for every
+     * response. Sampled delays are added to the ones specified with {@link #delayBody(TimeUnit, long...)}.
+     *
+     * @param distribution distribution of the delays, or {@code null} to stop using it
+     */
+    public MatchableCall delayBody(LatencyDistribution distribution) {
+        bodyDelayDistribution = distribution;
+        return this;
+    }
+
+    /**
+     * Delays responses' headers within this {@link MatchableCall} by delays sampled from the given {@code distribution}, one for every
+     * response. Sampled delays are added to the ones specified with {@link #delayHeaders(TimeUnit, long...)}.
+     *
+     * @param distribution distribution of the delays, or {@code null} to stop using it
+     */
+    public MatchableCall delayHeaders(LatencyDistribution distribution) {
+        headerDelayDistribution = distribution;
+        return this;
+    }
+
+    /**
+     * Limits the rate at which responses' body within this {@link MatchableCall} is written to the socket, to simulate slow
+     * connections: the body is sent in chunks of at most {@code bytesPerPeriod} bytes, one chunk per {@code period}. You can specify
+     * more than one rate, which will be applied to consecutive responses, one by one, while last rate will be applied to all responses
+     * exceeding the number of specified rates. {@code 0} bytes per period disables throttling of a response.
+     * <p>
+     * Throttling is applied on top of {@link #delayBody(TimeUnit, long...)} and {@link #delayHeaders(TimeUnit, long...)}.
+     *
+     * @param timeUnit       time unit of the {@code period}, (see {@link TimeUnit#SECONDS}, {@link TimeUnit#MILLISECONDS})
+     * @param period         period in which at most {@code bytesPerPeriod} bytes are sent
+     * @param bytesPerPeriod comma-separated list of numbers of bytes sent per {@code period} to apply to consecutive responses
+     */
+    public MatchableCall throttleBody(TimeUnit timeUnit, long period, long... bytesPerPeriod) {
+        long[] periodsMillis = new long[bytesPerPeriod.length];
+        Arrays.fill(periodsMillis, timeUnit.toMillis(period));
+        AnswerPlan current;
+        do {
+            current = plan.get();
+        } while (!plan.compareAndSet(current, current.withThrottles(bytesPerPeriod, periodsMillis)));
+        return this;
+    }
+
+    private static long[] toMillis(TimeUnit timeUnit, long... delays) {
+        long[] delaysMillis = new long[delays.length];
+        for (int i = 0; i < delays.length; i++) {
+            delaysMillis[i] = timeUnit.toMillis(delays[i]);
         }
+        return delaysMillis;
+    }
+
+    /**
+     * Sets the priority of this {@code MatchableCall}, used when {@link RESTMockOptions#isFirstMatchWins()} is enabled: a request
+     * matched by more than one {@code MatchableCall} is answered by the one with the highest priority, or by the earliest registered one
+     * if their priorities are equal. The default priority is {@code 0}.
+     *
+     * @param priority priority of this {@code MatchableCall}
+     * @return this {@code MatchableCall}
+     */
+    public MatchableCall withPriority(int priority) {
+        if (this.priority != priority) {
+            this.priority = priority;
+            dispatcher.onPriorityChanged(this);
+        }
+        return this;
+    }
+
+    /**
+     * Makes this {@code MatchableCall} compress bodies of its responses with {@code gzip} or {@code deflate}, depending on the
+     * request's {@code Accept-Encoding} header, and set their {@code Content-Encoding} accordingly. Bodies of responses given with
+     * {@code thenReturn*} methods are compressed once and the result is reused; responses of custom {@link MockAnswer}s, responses with
+     * a {@code Content-Encoding} already set and chunked responses are sent as they are.
+     *
+     * @param compression whether responses should be compressed
+     * @return this {@code MatchableCall}
+     */
+    public MatchableCall withCompression(boolean compression) {
+        this.compression = compression;
         return this;
     }
 
+    /**
+     * Makes this {@code MatchableCall} inject transport-level faults into its responses, f.e. dropping the connection or never
+     * responding, each with its own probability. At most one fault is injected into a response: the one of the first policy which
+     * fires. These policies are tried before the ones from {@link RESTMockOptions#getFaultPolicies()}.
+     *
+     * @param faultPolicies faults to inject, none to stop injecting them
+     * @return this {@code MatchableCall}
+     */
+    public MatchableCall withFaults(FaultPolicy... faultPolicies) {
+        this.faultPolicies = faultPolicies.clone();
+        return this;
+    }
+
+    int getPriority() {
+        return priority;
+    }
+
     /**
      * removes this {@code MatchableCall} from being scheduled within {@link RESTMockServer}.
      *
@@ -211,6 +357,9 @@ public class MatchableCall {
      * <p>If you specify more than one response, each consecutive call to server will return next response from the list, if number of
      * requests exceeds number of specified responses, the last response will be repeated</p>
      *
+     * <p>Responses are copied when this method is called, each request then gets its own copy of them, so changes made to
+     * {@code mockResponses} afterwards are not reflected</p>
+     *
      * @param mockResponses a {@link MockResponse} that will be returned with this {@code MatchableCall}
      * @return this {@code MatchableCall}
      */
@@ -220,7 +369,7 @@ public class MatchableCall {
             int i = 0;
             for (MockResponse response : mockResponses) {
                 if (response != null) {
-                    mockAnswers[i++] = new SimpleMockResponseAnswer(response);
+                    mockAnswers[i++] = new ResponseTemplate(response, dispatcher.getBodyStore());
                 }
             }
             thenAnswer(mockAnswers);
@@ -242,55 +391,70 @@ public class MatchableCall {
      */
     public MatchableCall thenAnswer(MockAnswer... mockAnswers) {
         if (mockAnswers != null) {
+            List<MockAnswer> newAnswers = new ArrayList<>(mockAnswers.length);
             for (MockAnswer answer : mockAnswers) {
                 if (answer != null) {
-                    this.answers.add(answer);
+                    newAnswers.add(answer);
                 }
             }
+            AnswerPlan current;
+            do {
+                current = plan.get();
+            } while (!plan.compareAndSet(current, current.withAnswers(newAnswers)));
         }
         addToDispatcher();
         return this;
     }
 
     MockResponse nextResponse(RecordedRequest request) {
+        long responseIndex = invocationCount.getAndIncrement();
+        AnswerPlan currentPlan = plan.get();
+        if (currentPlan.answers.length == 0) {
+            return null;
+        }
+        MockAnswer mockAnswer = currentPlan.answerAt(responseIndex);
         MockResponse mockResponse;
-        if (answers.isEmpty()) {
-            mockResponse = null;
+        if (compression && mockAnswer instanceof TemplatedAnswer) {
+            mockResponse = ((TemplatedAnswer) mockAnswer).answerCompressed(request);
         } else {
-            mockResponse = currentResponse(request);
-            setResponseDelayInternal(mockResponse);
+            mockResponse = mockAnswer.answer(request);
+        }
+        long bodyDelay = currentPlan.bodyDelayAt(responseIndex) + sampleDelay(bodyDelayDistribution);
+        long headerDelay = currentPlan.headerDelayAt(responseIndex) + sampleDelay(headerDelayDistribution);
+        long throttleBytes = currentPlan.throttleBytesAt(responseIndex);
+        FaultPolicy[] faults = faultPolicies;
+        if (mockResponse != null && (bodyDelay != 0 || headerDelay != 0 || throttleBytes != 0 || faults.length > 0)) {
+            if (!(mockAnswer instanceof TemplatedAnswer)) {
+                // custom answers may return the same response for many requests, it must not be changed
+                mockResponse = mockResponse.clone();
+            }
+            setResponseDelayInternal(mockResponse, bodyDelay, headerDelay);
+            if (throttleBytes != 0) {
+                mockResponse.throttleBody(throttleBytes, currentPlan.throttlePeriodAt(responseIndex), TimeUnit.MILLISECONDS);
+            }
+            if (FaultPolicy.inject(mockResponse, faults)) {
+                dispatcher.onFaultInjected();
+            }
         }
-        responseIndex++;
         return mockResponse;
     }
 
-    private MockResponse currentResponse(RecordedRequest request) {
-        MockAnswer mockAnswer;
-        if (responseIndex >= answers.size()) {
-            mockAnswer = answers.get(answers.size() - 1);
-        } else {
-            mockAnswer = answers.get(responseIndex);
+    /**
+     * Releases bodies of this {@code MatchableCall}'s responses from the dispatcher's {@link BodyStore}, once it has been removed.
+     */
+    void releaseBodies() {
+        for (MockAnswer answer : plan.get().answers) {
+            if (answer instanceof TemplatedAnswer) {
+                ((TemplatedAnswer) answer).release();
+            }
         }
-        return mockAnswer.answer(request);
     }
 
-    private void setResponseDelayInternal(MockResponse response) {
-        long bodyDelay;
-        long headerDelay;
-        if (bodyDelays.isEmpty()) {
-            bodyDelay = 0;
-        } else if (responseIndex >= bodyDelays.size()) {
-            bodyDelay = bodyDelays.get(bodyDelays.size() - 1);
-        } else {
-            bodyDelay = bodyDelays.get(responseIndex);
-        }
-        if (headerDelays.isEmpty()) {
-            headerDelay = 0;
-        } else if (responseIndex >= headerDelays.size()) {
-            headerDelay = headerDelays.get(headerDelays.size() - 1);
-        } else {
-            headerDelay = headerDelays.get(responseIndex);
-        }
+    private static long sampleDelay(LatencyDistribution distribution) {
+        return distribution != null ? distribution.sampleMillis() : 0;
+    }
+
+    private void setResponseDelayInternal(MockResponse response, long bodyDelay, long headerDelay) {
         if (bodyDelay != 0) {
             response.setBodyDelay(bodyDelay, TimeUnit.MILLISECONDS);
         }
@@ -299,25 +463,97 @@ public class MatchableCall {
         }
     }
 
+    /**
+     * @return how many requests were answered by this {@code MatchableCall}, regardless of the requests' history retention options
+     */
+    public long getInvocationCount() {
+        return invocationCount.get();
+    }
+
     int getNumberOfAnswers() {
-        return answers.size();
+        return plan.get().answers.length;
     }
 
     private void addToDispatcher() {
         dispatcher.addMatchableCall(this);
     }
 
-    private static class SimpleMockResponseAnswer implements MockAnswer {
+    /**
+     * Immutable answers, delays and throttles of a {@code MatchableCall}. Each change creates a new plan, so a request is always answered
+     * according to a consistent one, and looking an answer up by the response index takes constant time.
+     */
+    private static final class AnswerPlan {
+
+        static final AnswerPlan EMPTY = new AnswerPlan(new MockAnswer[0], new long[0], new long[0], new long[0], new long[0]);
+
+        final MockAnswer[] answers;
+        final long[] bodyDelays;
+        final long[] headerDelays;
+        final long[] throttleBytes;
+        final long[] throttlePeriods;
+
+        private AnswerPlan(MockAnswer[] answers, long[] bodyDelays, long[] headerDelays, long[] throttleBytes, long[] throttlePeriods) {
+            this.answers = answers;
+            this.bodyDelays = bodyDelays;
+            this.headerDelays = headerDelays;
+            this.throttleBytes = throttleBytes;
+            this.throttlePeriods = throttlePeriods;
+        }
+
+        AnswerPlan withAnswers(List<MockAnswer> newAnswers) {
+            MockAnswer[] allAnswers = Arrays.copyOf(answers, answers.length + newAnswers.size());
+            for (int i = 0; i < newAnswers.size(); i++) {
+                allAnswers[answers.length + i] = newAnswers.get(i);
+            }
+            return new AnswerPlan(allAnswers, bodyDelays, headerDelays, throttleBytes, throttlePeriods);
+        }
 
-        private final MockResponse response;
+        AnswerPlan withBodyDelays(long[] newDelays) {
+            return new AnswerPlan(answers, concat(bodyDelays, newDelays), headerDelays, throttleBytes, throttlePeriods);
+        }
+
+        AnswerPlan withHeaderDelays(long[] newDelays) {
+            return new AnswerPlan(answers, bodyDelays, concat(headerDelays, newDelays), throttleBytes, throttlePeriods);
+        }
 
-        public SimpleMockResponseAnswer(MockResponse response) {
-            this.response = response;
+        AnswerPlan withThrottles(long[] newBytes, long[] newPeriods) {
+            return new AnswerPlan(answers, bodyDelays, headerDelays, concat(throttleBytes, newBytes), concat(throttlePeriods, newPeriods));
+        }
+
+        /**
+         * @return answer for the given {@code responseIndex}, the last answer is repeated for indexes exceeding the number of answers
+         */
+        MockAnswer answerAt(long responseIndex) {
+            return answers[(int) Math.min(responseIndex, answers.length - 1)];
+        }
+
+        long bodyDelayAt(long responseIndex) {
+            return delayAt(bodyDelays, responseIndex);
+        }
+
+        long headerDelayAt(long responseIndex) {
+            return delayAt(headerDelays, responseIndex);
+        }
+
+        long throttleBytesAt(long responseIndex) {
+            return delayAt(throttleBytes, responseIndex);
+        }
+
+        long throttlePeriodAt(long responseIndex) {
+            return delayAt(throttlePeriods, responseIndex);
+        }
+
+        private static long delayAt(long[] delays, long responseIndex) {
+            if (delays.length == 0) {
+                return 0;
+            }
+            return delays[(int) Math.min(responseIndex, delays.length - 1)];
         }
 
-        @Override
-        public MockResponse answer(RecordedRequest request) {
-            return response;
+        private static long[] concat(long[] first, long[] second) {
+            long[] result = Arrays.copyOf(first, first.length + second.length);
+            System.arraycopy(second, 0, result, first.length, second.length);
+            return result;
         }
     }
 }
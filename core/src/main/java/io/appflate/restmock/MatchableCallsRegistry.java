@@ -0,0 +1,668 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import io.appflate.restmock.utils.ParsedRequest;
+import io.appflate.restmock.utils.RequestMatcher;
+import io.appflate.restmock.utils.RouteHint;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Immutable snapshot of {@link MatchableCall}s registered within {@link MatchableCallsRequestDispatcher}.
+ * <p>
+ * Calls are indexed by the HTTP method and the exact path or path segments described by their matchers' {@link RouteHint}, so
+ * matching a request only evaluates the calls from the buckets the request falls into. Calls with no usable hint end up in a residual
+ * list that is always evaluated.
+ * <p>
+ * If enabled, calls matched only by a path regex are kept aside and their patterns are merged into a {@link CombinedPathPattern}, so
+ * that a single pass over the path tells from which of them the evaluation has to start. The combined pattern is built lazily, on the
+ * first request evaluated against the bucket.
+ * <p>
+ * Calls are evaluated in dispatch order: by descending {@link MatchableCall#getPriority()}, then by registration order.
+ * <p>
+ * Buckets are kept in {@link PersistentHashMap}s of sorted arrays, so adding or removing a call copies only the array it is indexed
+ * in and a few nodes of the map leading to it, while the new snapshot shares the rest of the index with the previous one.
+ * <p>
+ * Calls with {@link RequestMatcher#isCacheable() cacheable} matchers are indexed separately from the other ones, so that their
+ * matching results can be reused from a {@link DispatchCache} for requests of the same shape, while the other ones are evaluated for
+ * every request. Each snapshot has its own {@link #getVersion() version}, which tells cached results of different snapshots apart.
+ */
+final class MatchableCallsRegistry {
+
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    private static final Comparator<Entry> BY_REGISTRATION = new Comparator<Entry>() {
+
+        @Override
+        public int compare(Entry first, Entry second) {
+            return first.sequence < second.sequence ? -1 : (first.sequence == second.sequence ? 0 : 1);
+        }
+    };
+
+    private static final Comparator<Entry> DISPATCH_ORDER = new Comparator<Entry>() {
+
+        @Override
+        public int compare(Entry first, Entry second) {
+            return first == second ? 0 : (first.precedes(second) ? -1 : 1);
+        }
+    };
+
+    private final long version;
+    private final boolean combinePathRegexes;
+    private final PersistentHashMap<MatchableCall, Entry> entries;
+    private final long nextSequence;
+    private final CallsIndex cacheableCalls;
+    private final CallsIndex uncacheableCalls;
+    private volatile List<MatchableCall> calls;
+
+    private MatchableCallsRegistry(boolean combinePathRegexes, PersistentHashMap<MatchableCall, Entry> entries, long nextSequence,
+                                   CallsIndex cacheableCalls, CallsIndex uncacheableCalls) {
+        this.version = VERSIONS.incrementAndGet();
+        this.combinePathRegexes = combinePathRegexes;
+        this.entries = entries;
+        this.nextSequence = nextSequence;
+        this.cacheableCalls = cacheableCalls;
+        this.uncacheableCalls = uncacheableCalls;
+    }
+
+    static MatchableCallsRegistry empty(boolean combinePathRegexes) {
+        return new MatchableCallsRegistry(combinePathRegexes, PersistentHashMap.<MatchableCall, Entry>empty(), 0, CallsIndex.EMPTY,
+                                          CallsIndex.EMPTY);
+    }
+
+    private static boolean isCacheable(MatchableCall call) {
+        return call.requestMatcher instanceof RequestMatcher && ((RequestMatcher) call.requestMatcher).isCacheable();
+    }
+
+    /**
+     * @return version of this snapshot, unique among all snapshots.
+     */
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return registered calls, in order of their registration.
+     */
+    List<MatchableCall> getCalls() {
+        List<MatchableCall> calls = this.calls;
+        if (calls == null) {
+            List<Entry> registered = entries.values();
+            Collections.sort(registered, BY_REGISTRATION);
+            List<MatchableCall> registeredCalls = new ArrayList<>(registered.size());
+            for (Entry entry : registered) {
+                registeredCalls.add(entry.call);
+            }
+            calls = Collections.unmodifiableList(registeredCalls);
+            this.calls = calls;
+        }
+        return calls;
+    }
+
+    boolean contains(MatchableCall call) {
+        return entries.get(call) != null;
+    }
+
+    MatchableCallsRegistry with(MatchableCall call) {
+        return withAll(Collections.singletonList(call));
+    }
+
+    /**
+     * @return a registry with the given {@code calls} added, skipping the already registered ones and duplicates, or this registry if
+     * all of them are already registered
+     */
+    MatchableCallsRegistry withAll(Collection<MatchableCall> newCalls) {
+        PersistentHashMap<MatchableCall, Entry> newEntries = entries;
+        CallsIndex newCacheableCalls = cacheableCalls;
+        CallsIndex newUncacheableCalls = uncacheableCalls;
+        long sequence = nextSequence;
+        for (MatchableCall call : newCalls) {
+            if (newEntries.get(call) != null) {
+                continue;
+            }
+            Entry entry = new Entry(call, call.getPriority(), sequence++, combinePathRegexes);
+            newEntries = newEntries.with(call, entry);
+            if (entry.cacheable) {
+                newCacheableCalls = newCacheableCalls.with(entry);
+            } else {
+                newUncacheableCalls = newUncacheableCalls.with(entry);
+            }
+        }
+        if (newEntries == entries) {
+            return this;
+        }
+        return new MatchableCallsRegistry(combinePathRegexes, newEntries, sequence, newCacheableCalls, newUncacheableCalls);
+    }
+
+    /**
+     * @return a registry without the given {@code call}, or this registry if the call is not registered
+     */
+    MatchableCallsRegistry without(MatchableCall call) {
+        Entry entry = entries.get(call);
+        if (entry == null) {
+            return this;
+        }
+        return new MatchableCallsRegistry(combinePathRegexes, entries.without(call), nextSequence,
+                                          entry.cacheable ? cacheableCalls.without(entry) : cacheableCalls,
+                                          entry.cacheable ? uncacheableCalls : uncacheableCalls.without(entry));
+    }
+
+    /**
+     * @return a registry with the given {@code call} moved to the position matching its current priority, keeping its registration
+     * order among calls of the same priority, or this registry if the call is not registered or its priority hasn't changed
+     */
+    MatchableCallsRegistry withPriorityChanged(MatchableCall call) {
+        Entry entry = entries.get(call);
+        if (entry == null || entry.priority == call.getPriority()) {
+            return this;
+        }
+        Entry moved = entry.withPriority(call.getPriority());
+        return new MatchableCallsRegistry(combinePathRegexes, entries.with(call, moved), nextSequence,
+                                          entry.cacheable ? cacheableCalls.without(entry).with(moved) : cacheableCalls,
+                                          entry.cacheable ? uncacheableCalls : uncacheableCalls.without(entry).with(moved));
+    }
+
+    /**
+     * @return calls matching the given {@code request}, in dispatch order.
+     */
+    List<MatchableCall> match(RecordedRequest request) {
+        return match(request, null);
+    }
+
+    /**
+     * Same as {@link #match(RecordedRequest)}, but reuses matching results of cacheable calls stored in the given {@code cache}.
+     *
+     * @param cache cache of matching results, or {@code null} to evaluate all of the candidates
+     */
+    List<MatchableCall> match(RecordedRequest request, DispatchCache cache) {
+        List<MatchableCall> cacheableMatch = matchCacheable(request, cache, false);
+        List<Entry> uncacheableMatch = new ArrayList<>(1);
+        matchAll(uncacheableCalls.candidatesFor(request), request, uncacheableMatch);
+        if (uncacheableMatch.isEmpty()) {
+            return new ArrayList<>(cacheableMatch);
+        }
+        List<Entry> matched = uncacheableMatch;
+        for (MatchableCall call : cacheableMatch) {
+            matched.add(entries.get(call));
+        }
+        return callsInDispatchOrder(matched);
+    }
+
+    /**
+     * Evaluates candidates for the given {@code request} in dispatch order and stops at the first one matching it.
+     *
+     * @return the first call matching the given {@code request}, or {@code null} if none of the calls match it.
+     */
+    MatchableCall matchFirst(RecordedRequest request) {
+        return matchFirst(request, null);
+    }
+
+    /**
+     * Same as {@link #matchFirst(RecordedRequest)}, but reuses matching results of cacheable calls stored in the given {@code cache}.
+     *
+     * @param cache cache of matching results, or {@code null} to evaluate the candidates
+     */
+    MatchableCall matchFirst(RecordedRequest request, DispatchCache cache) {
+        List<MatchableCall> cacheableMatch = matchCacheable(request, cache, true);
+        if (cacheableMatch.isEmpty()) {
+            Entry first = matchFirst(uncacheableCalls.candidatesFor(request), request, null);
+            return first != null ? first.call : null;
+        }
+        MatchableCall cacheableFirst = cacheableMatch.get(0);
+        Entry precedingMatch = matchFirst(uncacheableCalls.candidatesFor(request), request, entries.get(cacheableFirst));
+        return precedingMatch != null ? precedingMatch.call : cacheableFirst;
+    }
+
+    /**
+     * @return cacheable calls matching the given {@code request} in dispatch order, or only the first one of them if {@code firstOnly}
+     */
+    private List<MatchableCall> matchCacheable(RecordedRequest request, DispatchCache cache, boolean firstOnly) {
+        if (cacheableCalls.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String key = null;
+        if (cache != null) {
+            key = DispatchCache.keyOf(request);
+            List<MatchableCall> cached = cache.get(version, key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        List<List<Entry>> candidates = cacheableCalls.candidatesFor(request);
+        List<MatchableCall> matched;
+        if (firstOnly) {
+            Entry first = matchFirst(candidates, request, null);
+            matched = first != null ? Collections.singletonList(first.call) : Collections.<MatchableCall>emptyList();
+        } else {
+            List<Entry> matchedEntries = new ArrayList<>(1);
+            matchAll(candidates, request, matchedEntries);
+            matched = callsInDispatchOrder(matchedEntries);
+        }
+        if (cache != null) {
+            cache.put(version, key, matched);
+        }
+        return matched;
+    }
+
+    private static List<MatchableCall> callsInDispatchOrder(List<Entry> matched) {
+        if (matched.size() > 1) {
+            Collections.sort(matched, DISPATCH_ORDER);
+        }
+        List<MatchableCall> calls = new ArrayList<>(matched.size());
+        for (Entry entry : matched) {
+            calls.add(entry.call);
+        }
+        return calls;
+    }
+
+    private static void matchAll(List<List<Entry>> candidates, RecordedRequest request, List<Entry> matched) {
+        for (List<Entry> list : candidates) {
+            for (int i = 0; i < list.size(); i++) {
+                Entry candidate = list.get(i);
+                if (candidate.call.requestMatcher.matches(request)) {
+                    matched.add(candidate);
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges the given lists of candidates, each one in dispatch order, and evaluates them until the first match.
+     *
+     * @param limit entry at which the evaluation stops, or {@code null} to evaluate all of the candidates
+     */
+    private static Entry matchFirst(List<List<Entry>> candidates, RecordedRequest request, Entry limit) {
+        int[] heads = new int[candidates.size()];
+        while (true) {
+            int next = -1;
+            Entry nextEntry = limit;
+            for (int i = 0; i < heads.length; i++) {
+                List<Entry> list = candidates.get(i);
+                if (heads[i] < list.size()) {
+                    Entry entry = list.get(heads[i]);
+                    if (nextEntry == null || entry.precedes(nextEntry)) {
+                        next = i;
+                        nextEntry = entry;
+                    }
+                }
+            }
+            if (next < 0) {
+                return null;
+            }
+            heads[next]++;
+            if (nextEntry.call.requestMatcher.matches(request)) {
+                return nextEntry;
+            }
+        }
+    }
+
+    /**
+     * Registered call along with its position in dispatch order and the place it's indexed at.
+     */
+    private static final class Entry {
+
+        static final int EXACT_PATH = 0;
+        static final int FIRST_PATH_SEGMENT = 1;
+        static final int LAST_PATH_SEGMENT = 2;
+        static final int PATH_PATTERN = 3;
+        static final int RESIDUAL = 4;
+
+        final MatchableCall call;
+        final int priority;
+        final long sequence;
+        final boolean cacheable;
+        final String method;
+        final int kind;
+        final String key;
+        final Pattern pathPattern;
+
+        Entry(MatchableCall call, int priority, long sequence, boolean combinePathRegexes) {
+            this.call = call;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.cacheable = isCacheable(call);
+            RouteHint routeHint = RouteHint.of(call.requestMatcher);
+            this.method = routeHint.getMethod();
+            this.pathPattern = routeHint.getPathPattern();
+            if (routeHint.getExactPath() != null) {
+                kind = EXACT_PATH;
+                key = routeHint.getExactPath();
+            } else if (routeHint.getFirstPathSegment() != null) {
+                kind = FIRST_PATH_SEGMENT;
+                key = routeHint.getFirstPathSegment();
+            } else if (routeHint.getLastPathSegment() != null) {
+                kind = LAST_PATH_SEGMENT;
+                key = routeHint.getLastPathSegment();
+            } else if (combinePathRegexes && pathPattern != null && CombinedPathPattern.isCombinable(pathPattern)) {
+                kind = PATH_PATTERN;
+                key = null;
+            } else {
+                kind = RESIDUAL;
+                key = null;
+            }
+        }
+
+        private Entry(Entry entry, int priority) {
+            this.call = entry.call;
+            this.priority = priority;
+            this.sequence = entry.sequence;
+            this.cacheable = entry.cacheable;
+            this.method = entry.method;
+            this.kind = entry.kind;
+            this.key = entry.key;
+            this.pathPattern = entry.pathPattern;
+        }
+
+        Entry withPriority(int priority) {
+            return new Entry(this, priority);
+        }
+
+        boolean precedes(Entry other) {
+            return priority > other.priority || (priority == other.priority && sequence < other.sequence);
+        }
+
+        /**
+         * @return a copy of the given {@code entries} sorted in dispatch order, with this entry inserted at its position
+         */
+        Entry[] insertInto(Entry[] entries) {
+            int low = 0;
+            int high = entries.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (entries[middle].precedes(this)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            Entry[] inserted = new Entry[entries.length + 1];
+            System.arraycopy(entries, 0, inserted, 0, low);
+            inserted[low] = this;
+            System.arraycopy(entries, low, inserted, low + 1, entries.length - low);
+            return inserted;
+        }
+
+        /**
+         * @return a copy of the given {@code entries} without this entry, or the same array if it doesn't contain it
+         */
+        Entry[] removeFrom(Entry[] entries) {
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i] == this) {
+                    if (entries.length == 1) {
+                        return NO_ENTRIES;
+                    }
+                    Entry[] removed = new Entry[entries.length - 1];
+                    System.arraycopy(entries, 0, removed, 0, i);
+                    System.arraycopy(entries, i + 1, removed, i, removed.length - i);
+                    return removed;
+                }
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Immutable index of calls, bucketed by their HTTP method.
+     */
+    private static final class CallsIndex {
+
+        static final CallsIndex EMPTY = new CallsIndex(Collections.<String, RouteBucket>emptyMap(), RouteBucket.EMPTY, 0);
+
+        private final Map<String, RouteBucket> methodBuckets;
+        private final RouteBucket anyMethodBucket;
+        private final int size;
+
+        private CallsIndex(Map<String, RouteBucket> methodBuckets, RouteBucket anyMethodBucket, int size) {
+            this.methodBuckets = methodBuckets;
+            this.anyMethodBucket = anyMethodBucket;
+            this.size = size;
+        }
+
+        CallsIndex with(Entry entry) {
+            return withBucket(entry.method, bucketFor(entry.method).with(entry), size + 1);
+        }
+
+        CallsIndex without(Entry entry) {
+            RouteBucket bucket = bucketFor(entry.method);
+            RouteBucket updated = bucket.without(entry);
+            return updated == bucket ? this : withBucket(entry.method, updated, size - 1);
+        }
+
+        private RouteBucket bucketFor(String method) {
+            if (method == null) {
+                return anyMethodBucket;
+            }
+            RouteBucket bucket = methodBuckets.get(method);
+            return bucket != null ? bucket : RouteBucket.EMPTY;
+        }
+
+        private CallsIndex withBucket(String method, RouteBucket bucket, int newSize) {
+            if (method == null) {
+                return new CallsIndex(methodBuckets, bucket, newSize);
+            }
+            // there are only a few HTTP methods, so the map of buckets is cheap to copy
+            Map<String, RouteBucket> newMethodBuckets = new HashMap<>(methodBuckets);
+            if (bucket.isEmpty()) {
+                newMethodBuckets.remove(method);
+            } else {
+                newMethodBuckets.put(method, bucket);
+            }
+            return new CallsIndex(newMethodBuckets, anyMethodBucket, newSize);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * @return lists of calls that can match the given {@code request}, each one in dispatch order.
+         */
+        List<List<Entry>> candidatesFor(RecordedRequest request) {
+            if (size == 0) {
+                return Collections.emptyList();
+            }
+            List<List<Entry>> candidates = new ArrayList<>(8);
+            ParsedRequest parsedRequest = ParsedRequest.of(request);
+            String method = request.getMethod();
+            if (method != null) {
+                RouteBucket methodBucket = methodBuckets.get(method.toUpperCase(Locale.US));
+                if (methodBucket != null) {
+                    methodBucket.collectCandidates(parsedRequest, candidates);
+                }
+            }
+            anyMethodBucket.collectCandidates(parsedRequest, candidates);
+            return candidates;
+        }
+    }
+
+    /**
+     * Immutable bucket of calls of a single HTTP method, indexed by their paths. Each list of calls is kept in dispatch order.
+     */
+    private static final class RouteBucket {
+
+        static final RouteBucket EMPTY = new RouteBucket(PersistentHashMap.<String, Entry[]>empty(),
+                                                         PersistentHashMap.<String, Entry[]>empty(),
+                                                         PersistentHashMap.<String, Entry[]>empty(), NO_ENTRIES, null, NO_ENTRIES);
+
+        // marks patterns which couldn't be combined
+        private static final Object NOT_COMBINABLE = new Object();
+
+        private final PersistentHashMap<String, Entry[]> byExactPath;
+        private final PersistentHashMap<String, Entry[]> byFirstPathSegment;
+        private final PersistentHashMap<String, Entry[]> byLastPathSegment;
+        private final Entry[] byPathPattern;
+        private final Entry[] residual;
+        // null until the first request is evaluated, then either a CombinedPathPattern or NOT_COMBINABLE
+        private volatile Object combinedPathPattern;
+
+        private RouteBucket(PersistentHashMap<String, Entry[]> byExactPath, PersistentHashMap<String, Entry[]> byFirstPathSegment,
+                            PersistentHashMap<String, Entry[]> byLastPathSegment, Entry[] byPathPattern, Object combinedPathPattern,
+                            Entry[] residual) {
+            this.byExactPath = byExactPath;
+            this.byFirstPathSegment = byFirstPathSegment;
+            this.byLastPathSegment = byLastPathSegment;
+            this.byPathPattern = byPathPattern;
+            this.combinedPathPattern = combinedPathPattern;
+            this.residual = residual;
+        }
+
+        boolean isEmpty() {
+            return byExactPath.isEmpty() && byFirstPathSegment.isEmpty() && byLastPathSegment.isEmpty() && byPathPattern.length == 0
+                && residual.length == 0;
+        }
+
+        RouteBucket with(Entry entry) {
+            switch (entry.kind) {
+                case Entry.EXACT_PATH:
+                    return withExactPaths(byExactPath.with(entry.key, entry.insertInto(entriesAt(byExactPath, entry.key))));
+                case Entry.FIRST_PATH_SEGMENT:
+                    return withFirstPathSegments(
+                        byFirstPathSegment.with(entry.key, entry.insertInto(entriesAt(byFirstPathSegment, entry.key))));
+                case Entry.LAST_PATH_SEGMENT:
+                    return withLastPathSegments(
+                        byLastPathSegment.with(entry.key, entry.insertInto(entriesAt(byLastPathSegment, entry.key))));
+                case Entry.PATH_PATTERN:
+                    return withPathPatterns(entry.insertInto(byPathPattern));
+                default:
+                    return withResidual(entry.insertInto(residual));
+            }
+        }
+
+        RouteBucket without(Entry entry) {
+            switch (entry.kind) {
+                case Entry.EXACT_PATH:
+                    return withExactPaths(without(byExactPath, entry));
+                case Entry.FIRST_PATH_SEGMENT:
+                    return withFirstPathSegments(without(byFirstPathSegment, entry));
+                case Entry.LAST_PATH_SEGMENT:
+                    return withLastPathSegments(without(byLastPathSegment, entry));
+                case Entry.PATH_PATTERN:
+                    Entry[] newByPathPattern = entry.removeFrom(byPathPattern);
+                    return newByPathPattern == byPathPattern ? this : withPathPatterns(newByPathPattern);
+                default:
+                    Entry[] newResidual = entry.removeFrom(residual);
+                    return newResidual == residual ? this : withResidual(newResidual);
+            }
+        }
+
+        private RouteBucket withExactPaths(PersistentHashMap<String, Entry[]> newByExactPath) {
+            if (newByExactPath == byExactPath) {
+                return this;
+            }
+            return new RouteBucket(newByExactPath, byFirstPathSegment, byLastPathSegment, byPathPattern, combinedPathPattern, residual);
+        }
+
+        private RouteBucket withFirstPathSegments(PersistentHashMap<String, Entry[]> newByFirstPathSegment) {
+            if (newByFirstPathSegment == byFirstPathSegment) {
+                return this;
+            }
+            return new RouteBucket(byExactPath, newByFirstPathSegment, byLastPathSegment, byPathPattern, combinedPathPattern, residual);
+        }
+
+        private RouteBucket withLastPathSegments(PersistentHashMap<String, Entry[]> newByLastPathSegment) {
+            if (newByLastPathSegment == byLastPathSegment) {
+                return this;
+            }
+            return new RouteBucket(byExactPath, byFirstPathSegment, newByLastPathSegment, byPathPattern, combinedPathPattern, residual);
+        }
+
+        private RouteBucket withPathPatterns(Entry[] newByPathPattern) {
+            return new RouteBucket(byExactPath, byFirstPathSegment, byLastPathSegment, newByPathPattern, null, residual);
+        }
+
+        private RouteBucket withResidual(Entry[] newResidual) {
+            return new RouteBucket(byExactPath, byFirstPathSegment, byLastPathSegment, byPathPattern, combinedPathPattern, newResidual);
+        }
+
+        private static Entry[] entriesAt(PersistentHashMap<String, Entry[]> map, String key) {
+            Entry[] entries = map.get(key);
+            return entries != null ? entries : NO_ENTRIES;
+        }
+
+        private static PersistentHashMap<String, Entry[]> without(PersistentHashMap<String, Entry[]> map, Entry entry) {
+            Entry[] entries = entriesAt(map, entry.key);
+            Entry[] remaining = entry.removeFrom(entries);
+            if (remaining == entries) {
+                return map;
+            }
+            return remaining.length == 0 ? map.without(entry.key) : map.with(entry.key, remaining);
+        }
+
+        void collectCandidates(ParsedRequest parsedRequest, List<List<Entry>> candidates) {
+            addCandidates(byExactPath, parsedRequest.getNormalizedPath(), candidates);
+            addCandidates(byFirstPathSegment, parsedRequest.getFirstPathSegment(), candidates);
+            addCandidates(byLastPathSegment, parsedRequest.getLastPathSegment(), candidates);
+            if (byPathPattern.length > 0) {
+                Object combined = combinedPathPattern();
+                if (combined == NOT_COMBINABLE) {
+                    candidates.add(Arrays.asList(byPathPattern));
+                } else {
+                    int firstMatch = ((CombinedPathPattern) combined).firstMatch(parsedRequest.getLowerCasePath());
+                    if (firstMatch >= 0) {
+                        candidates.add(Arrays.asList(byPathPattern).subList(firstMatch, byPathPattern.length));
+                    }
+                }
+            }
+            if (residual.length > 0) {
+                candidates.add(Arrays.asList(residual));
+            }
+        }
+
+        /**
+         * Combines the path patterns of this bucket on the first call. Concurrent callers may combine them more than once, which gives
+         * equal results.
+         */
+        private Object combinedPathPattern() {
+            Object combined = combinedPathPattern;
+            if (combined == null) {
+                List<Pattern> pathPatterns = new ArrayList<>(byPathPattern.length);
+                for (Entry entry : byPathPattern) {
+                    pathPatterns.add(entry.pathPattern);
+                }
+                combined = CombinedPathPattern.combine(pathPatterns);
+                if (combined == null) {
+                    combined = NOT_COMBINABLE;
+                }
+                combinedPathPattern = combined;
+            }
+            return combined;
+        }
+
+        private static void addCandidates(PersistentHashMap<String, Entry[]> map, String key, List<List<Entry>> candidates) {
+            if (key != null && !map.isEmpty()) {
+                Entry[] entries = map.get(key);
+                if (entries != null) {
+                    candidates.add(Arrays.asList(entries));
+                }
+            }
+        }
+    }
+}
@@ -16,32 +16,115 @@
 
 package io.appflate.restmock;
 
+import org.hamcrest.Matcher;
+
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.appflate.restmock.utils.ParsedRequest;
 import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.RecordedRequest;
 
 class MatchableCallsRequestDispatcher extends Dispatcher {
 
-    private List<MatchableCall> matchableCalls;
-    private List<RecordedRequest> requestsHistory = new CopyOnWriteArrayList<>();
+    private static final int AMBIGUOUS_MATCHES_QUEUE_SIZE = 64;
+    private static final int MAX_CHECKED_REQUEST_SHAPES = 1024;
+
+    private final AtomicReference<MatchableCallsRegistry> registry;
+    private final RequestHistory requestsHistory;
+
+    private final boolean combinePathRegexes;
+    private final boolean firstMatchWins;
+    private final boolean lazyFileLoading;
+    private final NetworkProfile networkProfile;
+    private final VirtualClock clock;
+    private final FaultPolicy[] faultPolicies;
+    private final AtomicLong injectedFaults = new AtomicLong();
+    private final ExecutorService ambiguousMatchesReporter;
+    private final Set<String> checkedRequestShapes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final DispatchCache dispatchCache;
+    private final BodyStore bodyStore = new BodyStore();
+    private final ThreadLocal<Set<MatchableCall>> pendingBatch = new ThreadLocal<>();
+
+    public MatchableCallsRequestDispatcher(RESTMockOptions options) {
+        combinePathRegexes = options.isCombinePathRegexes();
+        firstMatchWins = options.isFirstMatchWins();
+        lazyFileLoading = options.isLazyFileLoading();
+        networkProfile = options.getNetworkProfile();
+        faultPolicies = options.getFaultPolicies().toArray(new FaultPolicy[0]);
+        clock = new VirtualClock(options.getTimeScale());
+        registry = new AtomicReference<>(MatchableCallsRegistry.empty(combinePathRegexes));
+        requestsHistory = new RequestHistory(options, clock);
+        dispatchCache = options.getDispatchCacheSize() > 0 ? new DispatchCache(options.getDispatchCacheSize()) : null;
+        if (firstMatchWins && options.isReportAmbiguousMatches()) {
+            ambiguousMatchesReporter = newAmbiguousMatchesReporter();
+        } else {
+            ambiguousMatchesReporter = null;
+        }
+    }
+
+    /**
+     * @return single-thread executor which drops checks that don't fit in its queue, so that a burst of requests doesn't pile up in
+     * memory
+     */
+    private static ExecutorService newAmbiguousMatchesReporter() {
+        ThreadFactory threadFactory = new ThreadFactory() {
 
-    public MatchableCallsRequestDispatcher() {
-        matchableCalls = new CopyOnWriteArrayList<>();
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "RESTMock ambiguous matches reporter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(AMBIGUOUS_MATCHES_QUEUE_SIZE),
+                                      threadFactory, new ThreadPoolExecutor.DiscardPolicy());
     }
 
     @Override
     public MockResponse dispatch(RecordedRequest recordedRequest) throws InterruptedException {
-        requestsHistory.add(recordedRequest);
         RESTMockServer.getLogger().log("-> New Request:\t" + recordedRequest);
+        MockResponse response;
+        ParsedRequest.beginDispatch(recordedRequest);
+        try {
+            response = firstMatchWins ? dispatchToFirstMatch(recordedRequest) : dispatchToOnlyMatch(recordedRequest);
+        } finally {
+            ParsedRequest.endDispatch();
+        }
+        if (response != null && (networkProfile != null || faultPolicies.length > 0 || clock.getTimeScale() != 1)) {
+            // custom answers may return the same response for many requests, it must not be changed
+            response = response.clone();
+            if (FaultPolicy.inject(response, faultPolicies)) {
+                onFaultInjected();
+            }
+            if (networkProfile != null && networkProfile.apply(response)) {
+                onFaultInjected();
+            }
+            clock.scale(response);
+        }
+        return response;
+    }
+
+    private MockResponse dispatchToOnlyMatch(RecordedRequest recordedRequest) {
         List<MatchableCall> matchedCalls = getMatchedRequests(recordedRequest);
+        requestsHistory.record(recordedRequest, !matchedCalls.isEmpty());
         if (matchedCalls.size() == 1) {
-            return onOneResponseMatched(recordedRequest, matchedCalls);
+            return onOneResponseMatched(recordedRequest, matchedCalls.get(0));
         } else if (matchedCalls.size() > 1) {
             return onTooManyResponsesMatched(recordedRequest, matchedCalls);
         } else {
@@ -49,8 +132,52 @@ class MatchableCallsRequestDispatcher extends Dispatcher {
         }
     }
 
-    private MockResponse onOneResponseMatched(RecordedRequest recordedRequest, List<MatchableCall> matchedRequests) {
-        MockResponse response = matchedRequests.get(0).nextResponse(recordedRequest);
+    private MockResponse dispatchToFirstMatch(RecordedRequest recordedRequest) {
+        MatchableCallsRegistry currentRegistry = registry.get();
+        MatchableCall matchedCall = currentRegistry.matchFirst(recordedRequest, dispatchCache);
+        requestsHistory.record(recordedRequest, matchedCall != null);
+        if (matchedCall == null) {
+            return onNoResponsesMatched(recordedRequest);
+        }
+        if (ambiguousMatchesReporter != null) {
+            reportAmbiguousMatches(currentRegistry, recordedRequest);
+        }
+        return onOneResponseMatched(recordedRequest, matchedCall);
+    }
+
+    /**
+     * Checks the given {@code recordedRequest} for ambiguous matches in the background, once per request shape (as keyed by
+     * {@link DispatchCache#keyOf(RecordedRequest)}) for each registry snapshot.
+     */
+    private void reportAmbiguousMatches(final MatchableCallsRegistry registry, final RecordedRequest recordedRequest) {
+        if (checkedRequestShapes.size() >= MAX_CHECKED_REQUEST_SHAPES) {
+            checkedRequestShapes.clear();
+        }
+        if (!checkedRequestShapes.add(registry.getVersion() + " " + DispatchCache.keyOf(recordedRequest))) {
+            return;
+        }
+        ambiguousMatchesReporter.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                List<MatchableCall> matchedCalls;
+                ParsedRequest.beginDispatch(recordedRequest);
+                try {
+                    matchedCalls = registry.match(recordedRequest);
+                } finally {
+                    ParsedRequest.endDispatch();
+                }
+                if (matchedCalls.size() > 1) {
+                    RESTMockServer.getLogger()
+                        .error("## Ambiguous match, answered with the first one:\t" + prepareTooManyMatchesMessage(recordedRequest,
+                            matchedCalls));
+                }
+            }
+        });
+    }
+
+    private MockResponse onOneResponseMatched(RecordedRequest recordedRequest, MatchableCall matchedCall) {
+        MockResponse response = matchedCall.nextResponse(recordedRequest);
         RESTMockServer.getLogger().log("<- Response:\t" + response);
         return response;
     }
@@ -74,7 +201,7 @@ class MatchableCallsRequestDispatcher extends Dispatcher {
 
     private String prepareAllMocksMessage() {
         StringBuilder sb = new StringBuilder();
-        for (MatchableCall match : matchableCalls) {
+        for (MatchableCall match : registry.get().getCalls()) {
             sb.append(match.requestMatcher.toString()).append("\n");
         }
         return sb.toString();
@@ -97,13 +224,34 @@ class MatchableCallsRequestDispatcher extends Dispatcher {
     }
 
     private List<MatchableCall> getMatchedRequests(RecordedRequest recordedRequest) {
-        List<MatchableCall> matched = new LinkedList<>();
-        for (MatchableCall request : matchableCalls) {
-            if (request.requestMatcher.matches(recordedRequest)) {
-                matched.add(request);
-            }
-        }
-        return matched;
+        return registry.get().match(recordedRequest, dispatchCache);
+    }
+
+    /**
+     * @return store of the mocks' response bodies, which are released when their mocks are removed
+     */
+    BodyStore getBodyStore() {
+        return bodyStore;
+    }
+
+    void onFaultInjected() {
+        injectedFaults.incrementAndGet();
+    }
+
+    /**
+     * @return number of faults injected into responses by {@link FaultPolicy}s and {@link NetworkProfile}'s connection resets since
+     * the history was last cleared
+     */
+    long getInjectedFaultCount() {
+        return injectedFaults.get();
+    }
+
+    VirtualClock getClock() {
+        return clock;
+    }
+
+    boolean isLazyFileLoading() {
+        return lazyFileLoading;
     }
 
     MockResponse createErrorResponse(Exception e) {
@@ -117,31 +265,146 @@ class MatchableCallsRequestDispatcher extends Dispatcher {
     }
 
     void addMatchableCall(MatchableCall matchableCall) {
-        if (matchableCall.getNumberOfAnswers() > 0) {
-            RESTMockServer.getLogger().log("## Adding new response for:\t" + matchableCall.requestMatcher);
-            if (!matchableCalls.contains(matchableCall)) {
-                matchableCalls.add(matchableCall);
+        Set<MatchableCall> batch = pendingBatch.get();
+        if (batch != null) {
+            if (matchableCall.getNumberOfAnswers() > 0) {
+                batch.add(matchableCall);
             }
-        } else {
-            RESTMockServer.getLogger().log("## There were no responses specified for MatchableCall:\t" + matchableCall.requestMatcher);
+            return;
         }
+        addMatchableCalls(Collections.singletonList(matchableCall));
+    }
+
+    /**
+     * Adds all of the given {@code calls} with a single registry swap. Calls which are already registered, or which have no answers
+     * specified, are skipped.
+     */
+    void addMatchableCalls(Collection<MatchableCall> calls) {
+        List<MatchableCall> callsToAdd = new ArrayList<>(calls.size());
+        for (MatchableCall matchableCall : calls) {
+            if (matchableCall.getNumberOfAnswers() > 0) {
+                RESTMockServer.getLogger().log("## Adding new response for:\t" + matchableCall.requestMatcher);
+                callsToAdd.add(matchableCall);
+            } else {
+                RESTMockServer.getLogger().log("## There were no responses specified for MatchableCall:\t" + matchableCall.requestMatcher);
+            }
+        }
+        MatchableCallsRegistry current;
+        MatchableCallsRegistry updated;
+        do {
+            current = registry.get();
+            updated = current.withAll(callsToAdd);
+            if (updated == current) {
+                return;
+            }
+        } while (!registry.compareAndSet(current, updated));
+        invalidateDispatchCache();
+    }
+
+    /**
+     * Runs the given {@code registrations}, collecting calls added by them on the current thread, and then adds all of them at once
+     * with {@link #addMatchableCalls(Collection)}. Nested batches are merged into the outermost one.
+     */
+    void batch(Runnable registrations) {
+        if (pendingBatch.get() != null) {
+            registrations.run();
+            return;
+        }
+        Set<MatchableCall> batch = new LinkedHashSet<>();
+        pendingBatch.set(batch);
+        try {
+            registrations.run();
+        } finally {
+            pendingBatch.remove();
+        }
+        addMatchableCalls(batch);
     }
 
     void removeAllMatchableCalls() {
         RESTMockServer.getLogger().log("## Removing all responses");
-        matchableCalls.clear();
+        MatchableCallsRegistry removed = registry.getAndSet(MatchableCallsRegistry.empty(combinePathRegexes));
+        invalidateDispatchCache();
+        for (MatchableCall call : removed.getCalls()) {
+            call.releaseBodies();
+        }
+        bodyStore.clear();
     }
 
     boolean removeMatchableCall(final MatchableCall call) {
         RESTMockServer.getLogger().log("## Removing response for:\t" + call.requestMatcher);
-        return matchableCalls.remove(call);
+        Set<MatchableCall> batch = pendingBatch.get();
+        if (batch != null && batch.remove(call)) {
+            call.releaseBodies();
+            return true;
+        }
+        MatchableCallsRegistry current;
+        do {
+            current = registry.get();
+            if (!current.contains(call)) {
+                return false;
+            }
+        } while (!registry.compareAndSet(current, current.without(call)));
+        invalidateDispatchCache();
+        call.releaseBodies();
+        return true;
     }
 
+    void onPriorityChanged(MatchableCall call) {
+        MatchableCallsRegistry current;
+        do {
+            current = registry.get();
+            if (!current.contains(call)) {
+                return;
+            }
+        } while (!registry.compareAndSet(current, current.withPriorityChanged(call)));
+        invalidateDispatchCache();
+    }
+
+    /**
+     * Drops results cached for the previous registry snapshots. Results stored concurrently with the swap are never returned for the
+     * new snapshot, as they are stamped with the version of the registry they were computed with.
+     */
+    private void invalidateDispatchCache() {
+        if (dispatchCache != null) {
+            dispatchCache.invalidate();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        if (ambiguousMatchesReporter != null) {
+            ambiguousMatchesReporter.shutdownNow();
+        }
+    }
+
+    /**
+     * @return read-only snapshot of the requests' history, from oldest to newest
+     */
     List<RecordedRequest> getRequestHistory() {
-        return new ArrayList<>(requestsHistory);
+        return requestsHistory.snapshot();
+    }
+
+    /**
+     * @return number of requests which are not kept in the requests' history, see {@link RequestHistory}
+     */
+    long countNotRetainedRequests() {
+        return requestsHistory.countNotRetained();
+    }
+
+    void trackRequests(Matcher<RecordedRequest> matcher) {
+        requestsHistory.track(matcher);
+    }
+
+    /**
+     * @return number of requests matching the given {@code matcher}, or {@code -1} if it was not registered with
+     * {@link #trackRequests(Matcher)}, or requests were dropped from the history before it was
+     */
+    long countTrackedRequests(Matcher<RecordedRequest> matcher) {
+        return requestsHistory.countTracked(matcher);
     }
 
     void clearHistoricalRequests() {
         requestsHistory.clear();
+        injectedFaults.set(0);
     }
 }
\ No newline at end of file
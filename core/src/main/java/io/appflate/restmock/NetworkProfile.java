@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.SocketPolicy;
+
+/**
+ * Network conditions simulated for all of the responses of RESTMockServer, see
+ * {@link RESTMockOptions.Builder#networkProfile(NetworkProfile)}. A profile is applied on top of the settings of each
+ * {@link MatchableCall}:
+ * <ul>
+ * <li>responses' headers are delayed by the round trip time, plus a random jitter,</li>
+ * <li>responses' body is throttled to the bandwidth, unless the {@code MatchableCall} throttles it to a lower rate already,</li>
+ * <li>connections are reset after reading the request with the given probability, instead of sending the response.</li>
+ * </ul>
+ */
+public final class NetworkProfile {
+
+    /**
+     * A 3G mobile network: 300 ms round trip time, up to 100 ms of jitter and 750 kbit/s of bandwidth.
+     */
+    public static final NetworkProfile THREE_G = new Builder().roundTripTime(300, TimeUnit.MILLISECONDS)
+        .jitter(100, TimeUnit.MILLISECONDS)
+        .bandwidth(750 * 1000 / 8)
+        .build();
+
+    /**
+     * An LTE mobile network: 70 ms round trip time, up to 20 ms of jitter and 12 Mbit/s of bandwidth.
+     */
+    public static final NetworkProfile LTE = new Builder().roundTripTime(70, TimeUnit.MILLISECONDS)
+        .jitter(20, TimeUnit.MILLISECONDS)
+        .bandwidth(12 * 1000 * 1000 / 8)
+        .build();
+
+    /**
+     * A crowded Wi-Fi network: 40 ms round trip time, up to 60 ms of jitter, 2 Mbit/s of bandwidth and 5% of connections reset.
+     */
+    public static final NetworkProfile LOSSY_WIFI = new Builder().roundTripTime(40, TimeUnit.MILLISECONDS)
+        .jitter(60, TimeUnit.MILLISECONDS)
+        .bandwidth(2 * 1000 * 1000 / 8)
+        .resetProbability(0.05)
+        .build();
+
+    private static final long THROTTLE_PERIOD_MILLIS = 100;
+
+    private final long roundTripTimeMillis;
+    private final long jitterMillis;
+    private final long bytesPerSecond;
+    private final double resetProbability;
+    private final Random random;
+
+    private NetworkProfile(final Builder builder) {
+        roundTripTimeMillis = builder.roundTripTimeMillis;
+        jitterMillis = builder.jitterMillis;
+        bytesPerSecond = builder.bytesPerSecond;
+        resetProbability = builder.resetProbability;
+        random = builder.seed != null ? new Random(builder.seed) : new Random();
+    }
+
+    public long getRoundTripTimeMillis() {
+        return roundTripTimeMillis;
+    }
+
+    public long getJitterMillis() {
+        return jitterMillis;
+    }
+
+    /**
+     * @return bandwidth in bytes per second, {@code 0} means no limit
+     */
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public double getResetProbability() {
+        return resetProbability;
+    }
+
+    /**
+     * Applies this profile to the {@code response}, which must not be shared with other requests.
+     *
+     * @return whether the connection is reset instead of sending the response
+     */
+    boolean apply(MockResponse response) {
+        long headersDelay = roundTripTimeMillis;
+        if (jitterMillis > 0) {
+            headersDelay += (long) (random.nextDouble() * jitterMillis);
+        }
+        if (headersDelay > 0) {
+            response.setHeadersDelay(response.getHeadersDelay(TimeUnit.MILLISECONDS) + headersDelay, TimeUnit.MILLISECONDS);
+        }
+        if (bytesPerSecond > 0) {
+            long bytesPerPeriod = Math.max(1, bytesPerSecond * THROTTLE_PERIOD_MILLIS / 1000);
+            long currentPeriod = response.getThrottlePeriod(TimeUnit.MILLISECONDS);
+            long currentBytesPerPeriod = response.getThrottleBytesPerPeriod();
+            // compares the rates as bytesPerPeriod / THROTTLE_PERIOD_MILLIS < currentBytesPerPeriod / currentPeriod
+            if (currentPeriod == 0 || (double) bytesPerPeriod * currentPeriod < (double) currentBytesPerPeriod * THROTTLE_PERIOD_MILLIS) {
+                response.throttleBody(bytesPerPeriod, THROTTLE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (resetProbability > 0 && response.getSocketPolicy() == SocketPolicy.KEEP_OPEN && random.nextDouble() < resetProbability) {
+            response.setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+            return true;
+        }
+        return false;
+    }
+
+    public static final class Builder {
+        private long roundTripTimeMillis;
+        private long jitterMillis;
+        private long bytesPerSecond;
+        private double resetProbability;
+        private Long seed;
+
+        public Builder() {
+        }
+
+        public Builder roundTripTime(final long val, final TimeUnit unit) {
+            roundTripTimeMillis = unit.toMillis(val);
+            return this;
+        }
+
+        public Builder jitter(final long val, final TimeUnit unit) {
+            jitterMillis = unit.toMillis(val);
+            return this;
+        }
+
+        public Builder bandwidth(final long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+            return this;
+        }
+
+        public Builder resetProbability(final double val) {
+            if (val < 0 || val > 1) {
+                throw new IllegalArgumentException("resetProbability should be within [0, 1]! is: " + val);
+            }
+            resetProbability = val;
+            return this;
+        }
+
+        public Builder seed(final long val) {
+            seed = val;
+            return this;
+        }
+
+        public NetworkProfile build() {
+            return new NetworkProfile(this);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appflate.restmock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable hash map, stored as a trie branching on 5 bits of the keys' hashes at each level. Adding or removing an entry copies
+ * only the nodes on the path to it, so that the updated map shares the rest of them with the original one, and updates cost
+ * {@code O(log32 n)} instead of copying the whole map.
+ * <p>
+ * Keys are compared with {@link Object#equals(Object)}, {@code null} keys are not supported.
+ */
+final class PersistentHashMap<K, V> {
+
+    private static final int BITS_PER_LEVEL = 5;
+    private static final int LEVEL_MASK = (1 << BITS_PER_LEVEL) - 1;
+    private static final PersistentHashMap<Object, Object> EMPTY = new PersistentHashMap<>(null, 0);
+
+    // either null, a Leaf, a Collision or a Node
+    private final Object root;
+    private final int size;
+
+    private PersistentHashMap(Object root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(K key) {
+        int hash = hash(key);
+        Object slot = root;
+        for (int shift = 0; slot != null; shift += BITS_PER_LEVEL) {
+            if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return leaf.hash == hash && leaf.key.equals(key) ? (V) leaf.value : null;
+            }
+            if (slot instanceof Collision) {
+                Collision collision = (Collision) slot;
+                int index = collision.hash == hash ? collision.indexOf(key) : -1;
+                return index >= 0 ? (V) collision.leaves[index].value : null;
+            }
+            Node node = (Node) slot;
+            int bit = bitFor(hash, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            slot = node.slots[node.indexOf(bit)];
+        }
+        return null;
+    }
+
+    /**
+     * @return a map with the given {@code value} associated with the {@code key}, replacing the previous value if there was one
+     */
+    PersistentHashMap<K, V> with(K key, V value) {
+        Leaf leaf = new Leaf(hash(key), key, value);
+        boolean[] added = new boolean[1];
+        Object newRoot = put(root, leaf, 0, added);
+        return new PersistentHashMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * @return a map without the given {@code key}, or this map if it doesn't contain the key
+     */
+    PersistentHashMap<K, V> without(K key) {
+        Object newRoot = remove(root, hash(key), key, 0);
+        if (newRoot == root) {
+            return this;
+        }
+        return newRoot == null ? PersistentHashMap.<K, V>empty() : new PersistentHashMap<K, V>(newRoot, size - 1);
+    }
+
+    /**
+     * @return values of this map, in no particular order
+     */
+    @SuppressWarnings("unchecked")
+    List<V> values() {
+        List<Object> values = new ArrayList<>(size);
+        collectValues(root, values);
+        return (List<V>) values;
+    }
+
+    private static int hash(Object key) {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int bitFor(int hash, int shift) {
+        return 1 << ((hash >>> shift) & LEVEL_MASK);
+    }
+
+    private static Object put(Object slot, Leaf leaf, int shift, boolean[] added) {
+        if (slot == null) {
+            added[0] = true;
+            return leaf;
+        }
+        if (slot instanceof Leaf) {
+            Leaf existing = (Leaf) slot;
+            if (existing.hash == leaf.hash && existing.key.equals(leaf.key)) {
+                return leaf;
+            }
+            added[0] = true;
+            return merge(existing, leaf, shift);
+        }
+        if (slot instanceof Collision) {
+            Collision collision = (Collision) slot;
+            if (collision.hash != leaf.hash) {
+                Node node = new Node(bitFor(collision.hash, shift), new Object[] { collision });
+                return put(node, leaf, shift, added);
+            }
+            int index = collision.indexOf(leaf.key);
+            Leaf[] leaves;
+            if (index >= 0) {
+                leaves = collision.leaves.clone();
+                leaves[index] = leaf;
+            } else {
+                added[0] = true;
+                leaves = new Leaf[collision.leaves.length + 1];
+                System.arraycopy(collision.leaves, 0, leaves, 0, collision.leaves.length);
+                leaves[collision.leaves.length] = leaf;
+            }
+            return new Collision(collision.hash, leaves);
+        }
+        Node node = (Node) slot;
+        int bit = bitFor(leaf.hash, shift);
+        int index = node.indexOf(bit);
+        if ((node.bitmap & bit) == 0) {
+            added[0] = true;
+            Object[] slots = new Object[node.slots.length + 1];
+            System.arraycopy(node.slots, 0, slots, 0, index);
+            slots[index] = leaf;
+            System.arraycopy(node.slots, index, slots, index + 1, node.slots.length - index);
+            return new Node(node.bitmap | bit, slots);
+        }
+        Object child = node.slots[index];
+        Object newChild = put(child, leaf, shift + BITS_PER_LEVEL, added);
+        if (newChild == child) {
+            return node;
+        }
+        Object[] slots = node.slots.clone();
+        slots[index] = newChild;
+        return new Node(node.bitmap, slots);
+    }
+
+    private static Object merge(Leaf first, Leaf second, int shift) {
+        if (first.hash == second.hash) {
+            return new Collision(first.hash, new Leaf[] { first, second });
+        }
+        int firstBit = bitFor(first.hash, shift);
+        int secondBit = bitFor(second.hash, shift);
+        if (firstBit == secondBit) {
+            return new Node(firstBit, new Object[] { merge(first, second, shift + BITS_PER_LEVEL) });
+        }
+        boolean firstComesFirst = ((first.hash >>> shift) & LEVEL_MASK) < ((second.hash >>> shift) & LEVEL_MASK);
+        Object[] slots = firstComesFirst ? new Object[] { first, second } : new Object[] { second, first };
+        return new Node(firstBit | secondBit, slots);
+    }
+
+    private static Object remove(Object slot, int hash, Object key, int shift) {
+        if (slot == null) {
+            return null;
+        }
+        if (slot instanceof Leaf) {
+            Leaf leaf = (Leaf) slot;
+            return leaf.hash == hash && leaf.key.equals(key) ? null : slot;
+        }
+        if (slot instanceof Collision) {
+            Collision collision = (Collision) slot;
+            int index = collision.hash == hash ? collision.indexOf(key) : -1;
+            if (index < 0) {
+                return slot;
+            }
+            if (collision.leaves.length == 2) {
+                return collision.leaves[1 - index];
+            }
+            Leaf[] leaves = new Leaf[collision.leaves.length - 1];
+            System.arraycopy(collision.leaves, 0, leaves, 0, index);
+            System.arraycopy(collision.leaves, index + 1, leaves, index, leaves.length - index);
+            return new Collision(hash, leaves);
+        }
+        Node node = (Node) slot;
+        int bit = bitFor(hash, shift);
+        if ((node.bitmap & bit) == 0) {
+            return slot;
+        }
+        int index = node.indexOf(bit);
+        Object child = node.slots[index];
+        Object newChild = remove(child, hash, key, shift + BITS_PER_LEVEL);
+        if (newChild == child) {
+            return node;
+        }
+        Object[] slots;
+        int bitmap;
+        if (newChild == null) {
+            if (node.slots.length == 1) {
+                return null;
+            }
+            bitmap = node.bitmap & ~bit;
+            slots = new Object[node.slots.length - 1];
+            System.arraycopy(node.slots, 0, slots, 0, index);
+            System.arraycopy(node.slots, index + 1, slots, index, slots.length - index);
+        } else {
+            bitmap = node.bitmap;
+            slots = node.slots.clone();
+            slots[index] = newChild;
+        }
+        // a single leaf or collision doesn't need a node, as it carries the whole hash of its keys
+        if (slots.length == 1 && !(slots[0] instanceof Node)) {
+            return slots[0];
+        }
+        return new Node(bitmap, slots);
+    }
+
+    private static void collectValues(Object slot, List<Object> values) {
+        if (slot == null) {
+            return;
+        }
+        if (slot instanceof Leaf) {
+            values.add(((Leaf) slot).value);
+        } else if (slot instanceof Collision) {
+            for (Leaf leaf : ((Collision) slot).leaves) {
+                values.add(leaf.value);
+            }
+        } else {
+            for (Object child : ((Node) slot).slots) {
+                collectValues(child, values);
+            }
+        }
+    }
+
+    private static final class Leaf {
+
+        final int hash;
+        final Object key;
+        final Object value;
+
+        Leaf(int hash, Object key, Object value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Leaves of keys with equal hashes.
+     */
+    private static final class Collision {
+
+        final int hash;
+        final Leaf[] leaves;
+
+        Collision(int hash, Leaf[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        int indexOf(Object key) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].key.equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static final class Node {
+
+        final int bitmap;
+        final Object[] slots;
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        int indexOf(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+    }
+}
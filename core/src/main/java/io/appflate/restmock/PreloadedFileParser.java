@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * A {@link RESTMockFileParser} decorator answering with contents of the files read by {@link FilePreloader}, and reading any other
+ * file with the wrapped parser. Like in {@link CachingFileParser}, preloaded bytes are decoded as UTF-8 when they are read as text,
+ * and preloaded text is encoded as UTF-8 when it is read as bytes.
+ */
+final class PreloadedFileParser implements RESTMockBinaryFileParser {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final RESTMockFileParser delegate;
+    private final Map<String, Object> contents;
+
+    /**
+     * @param contents preloaded contents of the files, as {@code byte[]} or {@code String}, by their paths
+     */
+    PreloadedFileParser(RESTMockFileParser delegate, Map<String, Object> contents) {
+        this.delegate = delegate;
+        this.contents = contents;
+    }
+
+    @Override
+    public String readJsonFile(String jsonFilePath) throws Exception {
+        Object fileContents = contents.get(jsonFilePath);
+        if (fileContents instanceof byte[]) {
+            return new String((byte[]) fileContents, UTF_8);
+        }
+        if (fileContents != null) {
+            return (String) fileContents;
+        }
+        return delegate.readJsonFile(jsonFilePath);
+    }
+
+    @Override
+    public byte[] readBytes(String filePath) throws Exception {
+        Object fileContents = contents.get(filePath);
+        if (fileContents instanceof byte[]) {
+            return (byte[]) fileContents;
+        }
+        if (fileContents != null) {
+            return ((String) fileContents).getBytes(UTF_8);
+        }
+        if (delegate instanceof RESTMockBinaryFileParser) {
+            return ((RESTMockBinaryFileParser) delegate).readBytes(filePath);
+        }
+        return delegate.readJsonFile(filePath).getBytes(UTF_8);
+    }
+}
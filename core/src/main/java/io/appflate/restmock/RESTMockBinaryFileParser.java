@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+/**
+ * A {@link RESTMockFileParser} which can also read files as raw bytes. Contents of files read this way go straight to the responses'
+ * bodies, without being decoded to a {@code String} and encoded back, and with their line endings kept intact.
+ */
+public interface RESTMockBinaryFileParser extends RESTMockFileParser {
+
+    /**
+     * reads the file from {@code filePath} and returns its contents as bytes
+     * <p> It's {@code RESTMockBinaryFileParser}'s implementation responsibility to determine how to
+     * resolve the given {@code filePath}. The returned array may be shared, so it must not be modified.</p>
+     *
+     * @param filePath a path to the file.
+     * @return file's contents.
+     * @throws Exception when an error occurs while reading the file (f.e. {@link java.io.IOException})
+     */
+    byte[] readBytes(String filePath) throws Exception;
+}
@@ -16,6 +16,12 @@
 
 package io.appflate.restmock;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.X509TrustManager;
 
@@ -23,11 +29,39 @@ public class RESTMockOptions {
     private boolean useHttps;
     private SSLSocketFactory socketFactory;
     private X509TrustManager trustManager;
+    private boolean combinePathRegexes;
+    private boolean firstMatchWins;
+    private boolean reportAmbiguousMatches;
+    private int dispatchCacheSize;
+    private int historyMaxSize;
+    private long historyMaxAgeMillis;
+    private boolean historyMatchedOnly;
+    private int historySampleRate;
+    private boolean lazyFileLoading;
+    private List<String> preloadFiles;
+    private int preloadThreads;
+    private NetworkProfile networkProfile;
+    private double timeScale;
+    private List<FaultPolicy> faultPolicies;
 
     private RESTMockOptions(final Builder builder) {
         setUseHttps(builder.useHttps);
         setSocketFactory(builder.socketFactory);
         setTrustManager(builder.trustManager);
+        setCombinePathRegexes(builder.combinePathRegexes);
+        setFirstMatchWins(builder.firstMatchWins);
+        setReportAmbiguousMatches(builder.reportAmbiguousMatches);
+        setDispatchCacheSize(builder.dispatchCacheSize);
+        setHistoryMaxSize(builder.historyMaxSize);
+        setHistoryMaxAgeMillis(builder.historyMaxAgeMillis);
+        setHistoryMatchedOnly(builder.historyMatchedOnly);
+        setHistorySampleRate(builder.historySampleRate);
+        setLazyFileLoading(builder.lazyFileLoading);
+        setPreloadFiles(builder.preloadFiles);
+        setPreloadThreads(builder.preloadThreads);
+        setNetworkProfile(builder.networkProfile);
+        setTimeScale(builder.timeScale);
+        setFaultPolicies(builder.faultPolicies);
     }
 
     public boolean isUseHttps() {
@@ -65,10 +99,199 @@ public class RESTMockOptions {
         this.trustManager = trustManager;
     }
 
+    /**
+     * Returns whether path regexes of mocks created with {@code RequestMatchers.pathMatchesRegex} are merged into a single pattern, so
+     * that one pass over a request's path finds the first regex mock matching it, instead of evaluating every regex mock separately.
+     */
+    public boolean isCombinePathRegexes() {
+        return combinePathRegexes;
+    }
+
+    public void setCombinePathRegexes(final boolean combinePathRegexes) {
+        this.combinePathRegexes = combinePathRegexes;
+    }
+
+    /**
+     * Returns whether a request is answered by the first mock matching it, instead of failing when more than one mock matches.
+     * Mocks are tried by descending {@code MatchableCall#withPriority(int)}, then in order of their registration, and the remaining
+     * ones are not evaluated once a match is found.
+     */
+    public boolean isFirstMatchWins() {
+        return firstMatchWins;
+    }
+
+    public void setFirstMatchWins(final boolean firstMatchWins) {
+        this.firstMatchWins = firstMatchWins;
+    }
+
+    /**
+     * Returns whether, when {@link #isFirstMatchWins()} is enabled, requests matched by more than one mock are reported to the logger.
+     * The check runs in the background, so it doesn't delay responses.
+     */
+    public boolean isReportAmbiguousMatches() {
+        return reportAmbiguousMatches;
+    }
+
+    public void setReportAmbiguousMatches(final boolean reportAmbiguousMatches) {
+        this.reportAmbiguousMatches = reportAmbiguousMatches;
+    }
+
+    /**
+     * Returns the maximum number of request shapes (method, path along with the query and header names) whose matching results are
+     * cached by RESTMockServer. Only results of cacheable matchers, like the ones from {@code RequestMatchers}, are cached. The cache
+     * is invalidated whenever mocks are added or removed, and evicts the least recently used shape once it's full. {@code 0}, the
+     * default, disables the cache.
+     */
+    public int getDispatchCacheSize() {
+        return dispatchCacheSize;
+    }
+
+    public void setDispatchCacheSize(final int dispatchCacheSize) {
+        this.dispatchCacheSize = dispatchCacheSize;
+    }
+
+    /**
+     * Returns the maximum number of requests kept in the requests' history, {@code 0} means no limit. Older requests are evicted from
+     * the history, see {@link #getHistorySampleRate()} for how they are counted.
+     */
+    public int getHistoryMaxSize() {
+        return historyMaxSize;
+    }
+
+    public void setHistoryMaxSize(final int historyMaxSize) {
+        this.historyMaxSize = historyMaxSize;
+    }
+
+    /**
+     * Returns for how long, in milliseconds, requests are kept in the requests' history, {@code 0} means no limit.
+     */
+    public long getHistoryMaxAgeMillis() {
+        return historyMaxAgeMillis;
+    }
+
+    public void setHistoryMaxAgeMillis(final long historyMaxAgeMillis) {
+        this.historyMaxAgeMillis = historyMaxAgeMillis;
+    }
+
+    /**
+     * Returns whether only requests matched by any of the mocks are kept in the requests' history.
+     */
+    public boolean isHistoryMatchedOnly() {
+        return historyMatchedOnly;
+    }
+
+    public void setHistoryMatchedOnly(final boolean historyMatchedOnly) {
+        this.historyMatchedOnly = historyMatchedOnly;
+    }
+
+    /**
+     * Returns {@code K}, where only every {@code K}-th request is kept in the requests' history. {@code 1} keeps all of them.
+     * <p>
+     * Requests which are not kept in the history, because of this or any other history option, are still counted exactly by
+     * verifications registered with {@code RequestsVerifier.registerVerification()} before the requests were received, and by
+     * {@code MatchableCall.getInvocationCount()}. Other verifications can't count them, so they throw
+     * {@code RequestHistoryIncompleteException} once any request was dropped.
+     */
+    public int getHistorySampleRate() {
+        return historySampleRate;
+    }
+
+    public void setHistorySampleRate(final int historySampleRate) {
+        this.historySampleRate = historySampleRate;
+    }
+
+    /**
+     * Returns whether files of {@code MatchableCall#thenReturnFile} mocks are read when the mock is first matched, instead of when it
+     * is registered. Each file is read once and its response is reused for the following requests. Files which cannot be read are
+     * answered with an error response, like the eagerly read ones.
+     */
+    public boolean isLazyFileLoading() {
+        return lazyFileLoading;
+    }
+
+    public void setLazyFileLoading(final boolean lazyFileLoading) {
+        this.lazyFileLoading = lazyFileLoading;
+    }
+
+    /**
+     * Returns paths of files which are read with the {@code RESTMockFileParser} when RESTMockServer is started, before it accepts any
+     * requests. Starting fails if any of them can't be read. The preloaded files are kept in memory for the mocks returning them.
+     * Globs are not supported, since file parsers can't list the files they read.
+     */
+    public List<String> getPreloadFiles() {
+        return preloadFiles;
+    }
+
+    public void setPreloadFiles(final List<String> preloadFiles) {
+        this.preloadFiles = preloadFiles;
+    }
+
+    /**
+     * Returns the maximum number of threads reading the {@link #getPreloadFiles()} in parallel.
+     */
+    public int getPreloadThreads() {
+        return preloadThreads;
+    }
+
+    public void setPreloadThreads(final int preloadThreads) {
+        this.preloadThreads = preloadThreads;
+    }
+
+    /**
+     * Returns network conditions simulated for all of the responses, on top of the settings of each {@code MatchableCall}, f.e.
+     * {@link NetworkProfile#THREE_G}, or {@code null} if responses are sent as fast as possible.
+     */
+    public NetworkProfile getNetworkProfile() {
+        return networkProfile;
+    }
+
+    public void setNetworkProfile(final NetworkProfile networkProfile) {
+        this.networkProfile = networkProfile;
+    }
+
+    /**
+     * Returns how many times faster than the real time RESTMockServer's {@link VirtualClock} runs. Delays of responses, including the
+     * ones from {@link #getNetworkProfile()}, are divided by it, f.e. with {@code 100} a 5 seconds delay takes 50 milliseconds.
+     * {@code 1} keeps the real time.
+     */
+    public double getTimeScale() {
+        return timeScale;
+    }
+
+    public void setTimeScale(final double timeScale) {
+        this.timeScale = timeScale;
+    }
+
+    /**
+     * Returns faults injected into all of the responses, after the ones of each {@code MatchableCall}. At most one fault is injected
+     * into a response: the one of the first policy which fires.
+     */
+    public List<FaultPolicy> getFaultPolicies() {
+        return faultPolicies;
+    }
+
+    public void setFaultPolicies(final List<FaultPolicy> faultPolicies) {
+        this.faultPolicies = faultPolicies;
+    }
+
     public static final class Builder {
         private boolean useHttps;
         private SSLSocketFactory socketFactory;
         private X509TrustManager trustManager;
+        private boolean combinePathRegexes;
+        private boolean firstMatchWins;
+        private boolean reportAmbiguousMatches;
+        private int dispatchCacheSize;
+        private int historyMaxSize;
+        private long historyMaxAgeMillis;
+        private boolean historyMatchedOnly;
+        private int historySampleRate = 1;
+        private boolean lazyFileLoading;
+        private List<String> preloadFiles = Collections.emptyList();
+        private int preloadThreads = Runtime.getRuntime().availableProcessors();
+        private NetworkProfile networkProfile;
+        private double timeScale = 1;
+        private List<FaultPolicy> faultPolicies = Collections.emptyList();
 
         public Builder() {
         }
@@ -88,6 +311,76 @@ public class RESTMockOptions {
             return this;
         }
 
+        public Builder combinePathRegexes(final boolean val) {
+            combinePathRegexes = val;
+            return this;
+        }
+
+        public Builder firstMatchWins(final boolean val) {
+            firstMatchWins = val;
+            return this;
+        }
+
+        public Builder reportAmbiguousMatches(final boolean val) {
+            reportAmbiguousMatches = val;
+            return this;
+        }
+
+        public Builder dispatchCacheSize(final int val) {
+            dispatchCacheSize = val;
+            return this;
+        }
+
+        public Builder historyMaxSize(final int val) {
+            historyMaxSize = val;
+            return this;
+        }
+
+        public Builder historyMaxAge(final long val, final TimeUnit unit) {
+            historyMaxAgeMillis = unit.toMillis(val);
+            return this;
+        }
+
+        public Builder historyMatchedOnly(final boolean val) {
+            historyMatchedOnly = val;
+            return this;
+        }
+
+        public Builder historySampleRate(final int val) {
+            historySampleRate = val;
+            return this;
+        }
+
+        public Builder lazyFileLoading(final boolean val) {
+            lazyFileLoading = val;
+            return this;
+        }
+
+        public Builder preloadFiles(final String... val) {
+            preloadFiles = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(val)));
+            return this;
+        }
+
+        public Builder preloadThreads(final int val) {
+            preloadThreads = val;
+            return this;
+        }
+
+        public Builder networkProfile(final NetworkProfile val) {
+            networkProfile = val;
+            return this;
+        }
+
+        public Builder timeScale(final double val) {
+            timeScale = val;
+            return this;
+        }
+
+        public Builder faultPolicies(final FaultPolicy... val) {
+            faultPolicies = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(val)));
+            return this;
+        }
+
         public RESTMockOptions build() {
             return new RESTMockOptions(this);
         }
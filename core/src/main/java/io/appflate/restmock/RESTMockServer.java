@@ -19,19 +19,20 @@ package io.appflate.restmock;
 import io.appflate.restmock.logging.NOOpLogger;
 import io.appflate.restmock.logging.RESTMockLogger;
 import java.io.IOException;
+import java.util.Collection;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.X509TrustManager;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
 import org.hamcrest.Matcher;
 
+import static io.appflate.restmock.utils.RequestMatchers.allOf;
 import static io.appflate.restmock.utils.RequestMatchers.isDELETE;
 import static io.appflate.restmock.utils.RequestMatchers.isGET;
 import static io.appflate.restmock.utils.RequestMatchers.isHEAD;
 import static io.appflate.restmock.utils.RequestMatchers.isPATCH;
 import static io.appflate.restmock.utils.RequestMatchers.isPOST;
 import static io.appflate.restmock.utils.RequestMatchers.isPUT;
-import static org.hamcrest.core.AllOf.allOf;
 
 @SuppressWarnings("unused")
 public class RESTMockServer {
@@ -64,17 +65,21 @@ public class RESTMockServer {
 
     public synchronized static void init(RESTMockFileParser restMockFileParser, RESTMockLogger logger, RESTMockOptions restMockOptions)
         throws IOException {
+        if (logger != null) {
+            RESTMockServer.logger = logger;
+        }
+        if (!restMockOptions.getPreloadFiles().isEmpty()) {
+            restMockFileParser =
+                FilePreloader.preload(restMockFileParser, restMockOptions.getPreloadFiles(), restMockOptions.getPreloadThreads());
+        }
         if (RESTMockServer.mockWebServer != null) {
             RESTMockServer.shutdown();
         }
         RESTMockServer.mockWebServer = new MockWebServer();
-        if (logger != null) {
-            RESTMockServer.logger = logger;
-        }
         setUpHttps(restMockOptions);
 
         RESTMockServer.getLogger().log("## Starting RESTMock server...");
-        RESTMockServer.dispatcher = new MatchableCallsRequestDispatcher();
+        RESTMockServer.dispatcher = new MatchableCallsRequestDispatcher(restMockOptions);
         RESTMockServer.mockWebServer.setDispatcher(dispatcher);
         RESTMockServer.mockWebServer.start();
         RESTMockServer.serverBaseUrl = mockWebServer.url("/").toString();
@@ -152,6 +157,22 @@ public class RESTMockServer {
         dispatcher.addMatchableCall(replacement);
     }
 
+    /**
+     * @return number of faults injected into responses, see {@link FaultPolicy} and {@link NetworkProfile}, since the last
+     * {@link #reset()}
+     */
+    public static long getInjectedFaultCount() {
+        return dispatcher.getInjectedFaultCount();
+    }
+
+    /**
+     * @return clock of this {@code RESTMockServer}, in which delays of responses are specified, see
+     * {@link RESTMockOptions#getTimeScale()}
+     */
+    public static VirtualClock getClock() {
+        return dispatcher.getClock();
+    }
+
     /**
      * @return this {@code RESTMockServer} url to use as an endpoint in your tests, or null, if the instance wasn't started yet
      */
@@ -168,6 +189,36 @@ public class RESTMockServer {
         dispatcher.addMatchableCall(call);
     }
 
+    /**
+     * adds all of the {@code calls} to this {@code RESTMockServer} at once, which is much faster than adding them one by one. Calls
+     * which are already added, or which have no responses specified, are skipped.
+     *
+     * @param calls to be added to this {@code RESTMockServer}
+     */
+    public static void addMatchableCalls(final Collection<MatchableCall> calls) {
+        dispatcher.addMatchableCalls(calls);
+    }
+
+    /**
+     * Runs the given {@code registrations} and adds all of the {@code MatchableCall}s scheduled by them (f.e. with {@code thenReturn*}
+     * methods) at once, when they are finished. Use it to set up many mocks quickly:
+     * <pre>
+     * RESTMockServer.batch(new Runnable() {
+     *     public void run() {
+     *         for (User user : users) {
+     *             RESTMockServer.whenGET(pathIs("/users/" + user.id)).thenReturnFile("users/" + user.id + ".json");
+     *         }
+     *     }
+     * });
+     * </pre>
+     * Mocks scheduled within the batch are not matched until it is finished. Only calls scheduled on the current thread are batched.
+     *
+     * @param registrations code scheduling {@code MatchableCall}s
+     */
+    public static void batch(final Runnable registrations) {
+        dispatcher.batch(registrations);
+    }
+
     /**
      * Helper method to create MatchableCall that will be matched only for GET requests along with the specified {@code requestMatcher}
      *
@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class RESTMockServerStarter {
 
@@ -48,6 +49,7 @@ public class RESTMockServerStarter {
         ThreadPoolExecutor threadPoolExecutor =
             new ThreadPoolExecutor(1, 1, KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(1));
 
+        final AtomicReference<IOException> startError = new AtomicReference<>();
         threadPoolExecutor.execute(new Runnable() {
 
             @Override
@@ -56,7 +58,7 @@ public class RESTMockServerStarter {
                     RESTMockServer.init(mocksFileParser, logger, restMockOptions);
                 } catch (IOException e) {
                     RESTMockServer.getLogger().error("Server start error", e);
-                    throw new RuntimeException(e);
+                    startError.set(e);
                 }
             }
         });
@@ -65,6 +67,9 @@ public class RESTMockServerStarter {
             if (!threadPoolExecutor.awaitTermination(KEEP_ALIVE_TIME, TimeUnit.SECONDS)) {
                 throw new RuntimeException("mock server didn't manage to start within the given timeout (60 seconds)");
             }
+            if (startError.get() != null) {
+                throw new RuntimeException(startError.get());
+            }
         } catch (InterruptedException e) {
             RESTMockServer.getLogger().error("Server start error", e);
             throw new RuntimeException(e);
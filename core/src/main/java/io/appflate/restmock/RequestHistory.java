@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import org.hamcrest.Matcher;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * History of requests received by {@link MatchableCallsRequestDispatcher}, kept according to the retention options from
+ * {@link RESTMockOptions}.
+ * <p>
+ * Requests which are not kept, either because they were evicted from the {@link RequestHistoryLog} or because they were skipped by
+ * the retention options, are only counted in total, as requests matching a given matcher can't be counted without them.
+ * <p>
+ * Matchers can also be tracked, in which case requests matching them are counted exactly as they are recorded, regardless of the
+ * retention options. Their counts are exact only if no request was dropped before they started being tracked though.
+ */
+final class RequestHistory {
+
+    private final RequestHistoryLog log;
+    private final boolean matchedOnly;
+    private final int sampleRate;
+    private final VirtualClock clock;
+    private final AtomicLong receivedRequests = new AtomicLong();
+    private final AtomicLong notRetainedRequests = new AtomicLong();
+    private final CopyOnWriteArrayList<TrackedMatcher> trackedMatchers = new CopyOnWriteArrayList<>();
+    // requests are recorded under the read lock, so that a matcher can start being tracked at a point no request is in flight
+    private final ReadWriteLock trackingLock = new ReentrantReadWriteLock();
+
+    RequestHistory(RESTMockOptions options, VirtualClock clock) {
+        this.clock = clock;
+        this.matchedOnly = options.isHistoryMatchedOnly();
+        this.sampleRate = Math.max(1, options.getHistorySampleRate());
+        this.log = new RequestHistoryLog(options.getHistoryMaxSize(), options.getHistoryMaxAgeMillis(),
+                                         new RequestHistoryLog.EvictionListener() {
+
+                                             @Override
+                                             public void onEvicted(RecordedRequest request) {
+                                                 notRetainedRequests.incrementAndGet();
+                                             }
+                                         });
+    }
+
+    /**
+     * @param matched whether the request was matched by any of the mocks
+     */
+    void record(RecordedRequest request, boolean matched) {
+        trackingLock.readLock().lock();
+        try {
+            for (TrackedMatcher trackedMatcher : trackedMatchers) {
+                if (trackedMatcher.matcher.matches(request)) {
+                    trackedMatcher.count.increment();
+                }
+            }
+            long number = receivedRequests.getAndIncrement();
+            if ((matchedOnly && !matched) || number % sampleRate != 0) {
+                notRetainedRequests.incrementAndGet();
+            } else {
+                log.append(request, clock.currentTimeMillis());
+            }
+        } finally {
+            trackingLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return read-only snapshot of the retained requests, from oldest to newest
+     */
+    List<RecordedRequest> snapshot() {
+        trackingLock.readLock().lock();
+        try {
+            return log.snapshot(clock.currentTimeMillis());
+        } finally {
+            trackingLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of requests which are no longer, or were never, kept in the history
+     */
+    long countNotRetained() {
+        return notRetainedRequests.get();
+    }
+
+    /**
+     * Starts counting requests matching the given {@code matcher} as they are recorded. The count starts with the number of requests
+     * matching it which were recorded so far. No requests are recorded while the count is initialized, so that each of them is
+     * counted exactly once: either in the initial count or as it's recorded. If some of the recorded requests are no longer kept, the
+     * count is incomplete until the history is cleared.
+     */
+    void track(Matcher<RecordedRequest> matcher) {
+        trackingLock.writeLock().lock();
+        try {
+            if (getTrackedMatcher(matcher) != null) {
+                return;
+            }
+            TrackedMatcher trackedMatcher = new TrackedMatcher(matcher);
+            // taking the snapshot evicts outdated requests, so they have to be counted as not retained afterwards
+            for (RecordedRequest request : log.snapshot(clock.currentTimeMillis())) {
+                if (matcher.matches(request)) {
+                    trackedMatcher.count.increment();
+                }
+            }
+            trackedMatcher.complete = notRetainedRequests.get() == 0;
+            trackedMatchers.add(trackedMatcher);
+        } finally {
+            trackingLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of recorded requests matching the given {@code matcher}, or {@code -1} if the {@code matcher} is not tracked, or
+     * its count is incomplete
+     */
+    long countTracked(Matcher<RecordedRequest> matcher) {
+        TrackedMatcher trackedMatcher = getTrackedMatcher(matcher);
+        return trackedMatcher != null && trackedMatcher.complete ? trackedMatcher.count.sum() : -1;
+    }
+
+    private TrackedMatcher getTrackedMatcher(Matcher<RecordedRequest> matcher) {
+        for (TrackedMatcher trackedMatcher : trackedMatchers) {
+            if (trackedMatcher.matcher == matcher) {
+                return trackedMatcher;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes all of the recorded requests. Tracked matchers stay registered, with their counts reset.
+     */
+    void clear() {
+        trackingLock.writeLock().lock();
+        try {
+            log.clear();
+            notRetainedRequests.set(0);
+            for (TrackedMatcher trackedMatcher : trackedMatchers) {
+                trackedMatcher.count.reset();
+                trackedMatcher.complete = true;
+            }
+        } finally {
+            trackingLock.writeLock().unlock();
+        }
+    }
+
+    private static final class TrackedMatcher {
+
+        final Matcher<RecordedRequest> matcher;
+        final StripedCounter count = new StripedCounter();
+        volatile boolean complete;
+
+        TrackedMatcher(Matcher<RecordedRequest> matcher) {
+            this.matcher = matcher;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TrackedMatcher && ((TrackedMatcher) o).matcher == matcher;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(matcher);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Append-only log of requests received by {@link MatchableCallsRequestDispatcher}.
+ * <p>
+ * Requests are stored in a linked list of fixed-size chunks, which are never copied, so appending a request takes constant time no
+ * matter how long the history is. Appends don't take locks: each one reserves a slot, fills it, and then helps to move the published
+ * size over all of the consecutive filled slots. {@link #snapshot(long)} returns a read-only view of the published requests, which
+ * doesn't change when more requests are appended or evicted.
+ * <p>
+ * If the log is bounded by size or age, the oldest requests are evicted as new ones are appended, and reported to the
+ * {@link EvictionListener}. Chunks holding only evicted requests become unreachable once no snapshot refers to them.
+ */
+final class RequestHistoryLog {
+
+    static final int CHUNK_SIZE = 1024;
+
+    interface EvictionListener {
+
+        void onEvicted(RecordedRequest request);
+    }
+
+    private final int maxSize;
+    private final long maxAgeMillis;
+    private final EvictionListener evictionListener;
+    private final AtomicReference<Log> log = new AtomicReference<>(new Log());
+
+    RequestHistoryLog() {
+        this(0, 0, null);
+    }
+
+    /**
+     * @param maxSize          maximum number of requests kept in the log, or {@code 0} for no limit
+     * @param maxAgeMillis     maximum age of requests kept in the log, or {@code 0} for no limit
+     * @param evictionListener listener notified about each evicted request, once
+     */
+    RequestHistoryLog(int maxSize, long maxAgeMillis, EvictionListener evictionListener) {
+        this.maxSize = maxSize;
+        this.maxAgeMillis = maxAgeMillis;
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * @param timestamp time at which the request was received, in milliseconds
+     */
+    void append(RecordedRequest request, long timestamp) {
+        Log current = log.get();
+        current.append(request, timestamp);
+        evict(current, timestamp);
+    }
+
+    /**
+     * @param now current time in milliseconds, used to evict requests older than the maximum age first
+     * @return read-only view of the requests kept in the log, from oldest to newest
+     */
+    List<RecordedRequest> snapshot(long now) {
+        Log current = log.get();
+        evict(current, now);
+        return current.snapshot();
+    }
+
+    void clear() {
+        log.set(new Log());
+    }
+
+    private void evict(Log current, long now) {
+        if (maxSize <= 0 && maxAgeMillis <= 0) {
+            return;
+        }
+        while (true) {
+            long start = current.start.get();
+            long end = current.published.get();
+            if (start >= end) {
+                return;
+            }
+            Chunk chunk = current.chunkOf(start);
+            if (chunk.firstIndex > start) {
+                // the start has been moved concurrently
+                continue;
+            }
+            int offset = (int) (start - chunk.firstIndex);
+            boolean tooMany = maxSize > 0 && end - start > maxSize;
+            boolean tooOld = maxAgeMillis > 0 && chunk.timestamps[offset] < now - maxAgeMillis;
+            if (!tooMany && !tooOld) {
+                return;
+            }
+            if (current.start.compareAndSet(start, start + 1)) {
+                if (evictionListener != null) {
+                    evictionListener.onEvicted(chunk.slots.get(offset));
+                }
+                current.advanceHead(start + 1);
+            }
+        }
+    }
+
+    private static final class Chunk {
+
+        final long firstIndex;
+        final AtomicReferenceArray<RecordedRequest> slots = new AtomicReferenceArray<>(CHUNK_SIZE);
+        final long[] timestamps = new long[CHUNK_SIZE];
+        final AtomicReference<Chunk> next = new AtomicReference<>();
+
+        Chunk(long firstIndex) {
+            this.firstIndex = firstIndex;
+        }
+
+        Chunk nextOrCreate() {
+            Chunk chunk = next.get();
+            if (chunk == null) {
+                next.compareAndSet(null, new Chunk(firstIndex + CHUNK_SIZE));
+                chunk = next.get();
+            }
+            return chunk;
+        }
+
+        boolean contains(long index) {
+            return index < firstIndex + CHUNK_SIZE;
+        }
+    }
+
+    private static final class Log {
+
+        /** chunk holding the first kept request, or a preceding one */
+        final AtomicReference<Chunk> head;
+        /** chunk holding the most recently reserved slot, or a preceding one */
+        final AtomicReference<Chunk> tail;
+        /** chunk holding the first not yet published slot, or a preceding one */
+        final AtomicReference<Chunk> publishedChunk;
+        final AtomicLong start = new AtomicLong();
+        final AtomicLong reserved = new AtomicLong();
+        final AtomicLong published = new AtomicLong();
+
+        Log() {
+            Chunk first = new Chunk(0);
+            head = new AtomicReference<>(first);
+            tail = new AtomicReference<>(first);
+            publishedChunk = new AtomicReference<>(first);
+        }
+
+        void append(RecordedRequest request, long timestamp) {
+            // the tail has to be read before the reservation, so that it never points past the reserved slot
+            Chunk tailChunk = tail.get();
+            long index = reserved.getAndIncrement();
+            Chunk chunk = tailChunk;
+            while (!chunk.contains(index)) {
+                chunk = chunk.nextOrCreate();
+            }
+            if (chunk != tailChunk) {
+                tail.compareAndSet(tailChunk, chunk);
+            }
+            int offset = (int) (index - chunk.firstIndex);
+            chunk.timestamps[offset] = timestamp;
+            chunk.slots.set(offset, request);
+            publish();
+        }
+
+        /**
+         * Moves the published size over consecutive filled slots. A slot which is not filled yet stops the move, which is then
+         * continued by the append filling it.
+         */
+        private void publish() {
+            while (true) {
+                long size = published.get();
+                if (size >= reserved.get()) {
+                    return;
+                }
+                Chunk chunk = publishedChunk.get();
+                if (chunk.firstIndex > size) {
+                    continue;
+                }
+                if (!chunk.contains(size)) {
+                    Chunk next = chunk.next.get();
+                    if (next == null) {
+                        return;
+                    }
+                    publishedChunk.compareAndSet(chunk, next);
+                    continue;
+                }
+                if (chunk.slots.get((int) (size - chunk.firstIndex)) == null) {
+                    return;
+                }
+                published.compareAndSet(size, size + 1);
+            }
+        }
+
+        Chunk chunkOf(long index) {
+            Chunk chunk = head.get();
+            while (!chunk.contains(index)) {
+                chunk = chunk.next.get();
+            }
+            return chunk;
+        }
+
+        void advanceHead(long newStart) {
+            Chunk chunk = head.get();
+            while (!chunk.contains(newStart)) {
+                Chunk next = chunk.next.get();
+                if (next == null) {
+                    return;
+                }
+                head.compareAndSet(chunk, next);
+                chunk = head.get();
+            }
+        }
+
+        List<RecordedRequest> snapshot() {
+            // the head has to be read before the start, so that it never points past the first kept request
+            Chunk chunk = head.get();
+            long first = start.get();
+            long end = published.get();
+            if (first >= end) {
+                return new Snapshot(new Chunk[0], 0, 0);
+            }
+            while (!chunk.contains(first)) {
+                chunk = chunk.next.get();
+            }
+            List<Chunk> chunks = new ArrayList<>();
+            chunks.add(chunk);
+            while (!chunk.contains(end - 1)) {
+                chunk = chunk.next.get();
+                chunks.add(chunk);
+            }
+            return new Snapshot(chunks.toArray(new Chunk[chunks.size()]), (int) (first - chunks.get(0).firstIndex), (int) (end - first));
+        }
+    }
+
+    private static final class Snapshot extends AbstractList<RecordedRequest> implements RandomAccess {
+
+        private final Chunk[] chunks;
+        private final int offset;
+        private final int size;
+
+        Snapshot(Chunk[] chunks, int offset, int size) {
+            this.chunks = chunks;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        @Override
+        public RecordedRequest get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            int position = offset + index;
+            return chunks[position / CHUNK_SIZE].slots.get(position % CHUNK_SIZE);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
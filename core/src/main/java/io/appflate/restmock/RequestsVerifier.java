@@ -19,9 +19,11 @@ package io.appflate.restmock;
 import org.hamcrest.Matcher;
 import org.hamcrest.core.AllOf;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
+import io.appflate.restmock.exceptions.RequestHistoryIncompleteException;
 import io.appflate.restmock.exceptions.RequestInvocationCountMismatchException;
 import io.appflate.restmock.exceptions.RequestInvocationCountNotEnoughException;
 import io.appflate.restmock.exceptions.RequestNotInvokedException;
@@ -38,10 +40,21 @@ public class RequestsVerifier {
         Matcher<RecordedRequest> matcher;
 
         /**
+         * Reads the count of a matcher registered with {@link #registerVerification(Matcher)}, or scans the requests' history otherwise.
+         *
          * @param requestMatcher needed to match the interesting request.
          * @return how many times the request was invoked
+         * @throws RequestHistoryIncompleteException if the matcher isn't registered and some requests were dropped from the history
          */
         private static int requestInvocationCount(Matcher<RecordedRequest> requestMatcher) {
+            long trackedCount = dispatcher.countTrackedRequests(requestMatcher);
+            if (trackedCount >= 0) {
+                return (int) trackedCount;
+            }
+            long notRetainedCount = dispatcher.countNotRetainedRequests();
+            if (notRetainedCount > 0) {
+                throw new RequestHistoryIncompleteException(requestMatcher, notRetainedCount);
+            }
             int count = 0;
             for (RecordedRequest recordedRequest : dispatcher.getRequestHistory()) {
                 if (requestMatcher.matches(recordedRequest)) {
@@ -95,10 +108,11 @@ public class RequestsVerifier {
             checkValidNumberOfTimes(times);
             int count = requestInvocationCount(matcher);
             if (count != times) {
+                List<RecordedRequest> requestHistory = dispatcher.getRequestHistory();
                 if (count == 0) {
-                    throw new RequestNotInvokedException(matcher, dispatcher.getRequestHistory());
+                    throw new RequestNotInvokedException(matcher, requestHistory);
                 } else {
-                    throw new RequestInvocationCountMismatchException(count, times, matcher, dispatcher.getRequestHistory());
+                    throw new RequestInvocationCountMismatchException(count, times, matcher, requestHistory);
                 }
             }
         }
@@ -117,6 +131,23 @@ public class RequestsVerifier {
         RequestsVerifier.dispatcher = dispatcher;
     }
 
+    /**
+     * Registers the given {@code matcher}, so that requests matching it are counted as they are received by RESTMockServer, and
+     * verifications using this very {@code matcher} object don't need to scan the history of requests. Register matchers before
+     * sending the requests you want to verify, f.e. when setting up the test. Counts are reset along with the history, on
+     * {@link RESTMockServer#reset()}.
+     * <p>Registered verifications are the only ones which stay exact once requests are dropped from the history according to
+     * its retention options, see {@link RESTMockOptions#getHistoryMaxSize()}. Other verifications then throw
+     * {@link RequestHistoryIncompleteException}.</p>
+     *
+     * @param matcher matcher to count requests for
+     * @return verification of requests matching the {@code matcher}, which can be reused
+     */
+    public static RequestVerification registerVerification(Matcher<RecordedRequest> matcher) {
+        dispatcher.trackRequests(matcher);
+        return new RequestVerification(matcher);
+    }
+
     public static RequestVerification verifyRequest(Matcher<RecordedRequest> matcher) {
         return new RequestVerification(matcher);
     }
@@ -147,7 +178,7 @@ public class RequestsVerifier {
      */
     public static List<RecordedRequest> takeLast(int count) {
         List<RecordedRequest> requestHistory = dispatcher.getRequestHistory();
-        return requestHistory.subList(Math.max(0, requestHistory.size() - count), requestHistory.size());
+        return new ArrayList<>(requestHistory.subList(Math.max(0, requestHistory.size() - count), requestHistory.size()));
     }
 
     /**
@@ -168,7 +199,7 @@ public class RequestsVerifier {
      */
     public static List<RecordedRequest> takeFirst(int count) {
         List<RecordedRequest> requestHistory = dispatcher.getRequestHistory();
-        return requestHistory.subList(0, Math.min(count, requestHistory.size()));
+        return new ArrayList<>(requestHistory.subList(0, Math.min(count, requestHistory.size())));
     }
 
     /**
@@ -189,7 +220,7 @@ public class RequestsVerifier {
      * @return specified range of requests' history (from oldest to newest).
      */
     public static List<RecordedRequest> take(int fromIndexInclusive, int toIndexExclusive) {
-        return dispatcher.getRequestHistory().subList(fromIndexInclusive, toIndexExclusive);
+        return new ArrayList<>(dispatcher.getRequestHistory().subList(fromIndexInclusive, toIndexExclusive));
     }
 
     /**
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import okhttp3.Headers;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.ByteString;
+
+/**
+ * Immutable template of a {@link MockResponse} returned by a {@link MatchableCall}.
+ * <p>
+ * The template keeps its own copy of the response given at creation, with headers built and the body encoded once. Each request gets
+ * a fresh {@link MockResponse#clone() clone} of it, which copies the headers only, while its body shares the template's read-only
+ * bytes. Changes made to a response by the dispatcher, like setting its delays, are therefore never visible to other requests.
+ * <p>
+ * Bodies are interned in a {@link BodyStore}, so templates with identical bodies share their bytes. Compressed variants of the body,
+ * see {@link MatchableCall#withCompression(boolean)}, are kept along with the template. The template's bodies are released from the
+ * store with {@link #release()}, once its {@link MatchableCall} is removed.
+ */
+final class ResponseTemplate implements TemplatedAnswer {
+
+    private final MockResponse prototype;
+    private final BodyStore bodyStore;
+    private final AtomicReferenceArray<MockResponse> encodedPrototypes = new AtomicReferenceArray<>(ContentEncoding.values().length);
+    private volatile MockResponse identityPrototype;
+    private final List<ByteString> storedBodies = new ArrayList<>(1);
+    private boolean released;
+
+    ResponseTemplate(MockResponse response, BodyStore bodyStore) {
+        this.prototype = response.clone();
+        this.bodyStore = bodyStore;
+        ByteString storedBody = bodyStore.intern(prototype);
+        if (storedBody != null) {
+            storedBodies.add(storedBody);
+        }
+    }
+
+    @Override
+    public MockResponse answer(RecordedRequest request) {
+        return prototype.clone();
+    }
+
+    /**
+     * Answers the {@code request} with the body compressed with the content coding preferred by its {@code Accept-Encoding} header.
+     * Each compressed variant is computed once, when it's first requested. Responses with a {@code Content-Encoding} already set, with
+     * a chunked body, or without a body, are answered as they are.
+     */
+    @Override
+    public MockResponse answerCompressed(RecordedRequest request) {
+        Buffer body = prototype.getBody();
+        Headers headers = prototype.getHeaders();
+        if (body == null || body.size() == 0 || headers.get("Content-Encoding") != null || headers.get("Transfer-Encoding") != null) {
+            return answer(request);
+        }
+        ContentEncoding encoding = ContentEncoding.negotiate(request.getHeader("Accept-Encoding"));
+        if (encoding == null) {
+            MockResponse identity = identityPrototype;
+            if (identity == null) {
+                identity = prototype.clone().addHeader("Vary", "Accept-Encoding");
+                identityPrototype = identity;
+            }
+            return identity.clone();
+        }
+        MockResponse encoded = encodedPrototypes.get(encoding.ordinal());
+        if (encoded == null) {
+            synchronized (this) {
+                encoded = encodedPrototypes.get(encoding.ordinal());
+                if (encoded == null) {
+                    encoded = prototype.clone()
+                        .setBody(encoding.encode(body))
+                        .addHeader("Content-Encoding", encoding.token)
+                        .addHeader("Vary", "Accept-Encoding");
+                    if (!released) {
+                        ByteString storedBody = bodyStore.intern(encoded);
+                        if (storedBody != null) {
+                            storedBodies.add(storedBody);
+                        }
+                    }
+                    encodedPrototypes.set(encoding.ordinal(), encoded);
+                }
+            }
+        }
+        return encoded.clone();
+    }
+
+    /**
+     * Releases this template's bodies from the {@link BodyStore}. The template keeps answering with them, but they are no longer
+     * shared with templates created afterwards. Releasing a template again has no effect.
+     */
+    @Override
+    public synchronized void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        for (ByteString storedBody : storedBodies) {
+            bodyStore.release(storedBody);
+        }
+        storedBodies.clear();
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter spreading its increments over a few cells, picked by the incrementing thread, so that threads dispatching requests
+ * concurrently don't contend on a single value. Reading the counter sums up the cells.
+ */
+final class StripedCounter {
+
+    // cells are spread apart, so that each of them lands on a separate cache line
+    private static final int CELL_SPACING = 8;
+
+    private final int mask;
+    private final AtomicLongArray cells;
+
+    StripedCounter() {
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        mask = stripes - 1;
+        cells = new AtomicLongArray(stripes * CELL_SPACING);
+    }
+
+    void increment() {
+        int stripe = (int) Thread.currentThread().getId() & mask;
+        cells.incrementAndGet(stripe * CELL_SPACING);
+    }
+
+    void add(long delta) {
+        cells.addAndGet(0, delta);
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += CELL_SPACING) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+
+    void reset() {
+        for (int i = 0; i < cells.length(); i += CELL_SPACING) {
+            cells.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * {@link MockAnswer} of the responses given with {@code thenReturn*} methods of {@link MatchableCall}, answered from a
+ * {@link ResponseTemplate}. Each request gets its own response, which can be changed freely.
+ */
+interface TemplatedAnswer extends MockAnswer {
+
+    /**
+     * @see ResponseTemplate#answerCompressed(RecordedRequest)
+     */
+    MockResponse answerCompressed(RecordedRequest request);
+
+    /**
+     * @see ResponseTemplate#release()
+     */
+    void release();
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+
+/**
+ * Clock of RESTMockServer, running {@link RESTMockOptions#getTimeScale()} times faster than the real time. Delays of responses are
+ * specified in its virtual time and are shortened accordingly when responses are sent, so that tests of long timeouts or backoffs
+ * run quickly, while the order and proportions of the delays are preserved. Timestamps of requests in the requests' history, and
+ * thus {@link RESTMockOptions#getHistoryMaxAgeMillis()}, are in virtual time as well.
+ * <p>
+ * Measure latencies with {@link #currentTimeMillis()}, f.e. {@code RESTMockServer.getClock().currentTimeMillis()}, to get them in
+ * the same virtual time as the delays.
+ */
+public final class VirtualClock {
+
+    private final double timeScale;
+    private final long originMillis;
+    private final long originNanos;
+
+    VirtualClock(double timeScale) {
+        if (!(timeScale > 0) || Double.isInfinite(timeScale)) {
+            throw new IllegalArgumentException("timeScale should be positive! is: " + timeScale);
+        }
+        this.timeScale = timeScale;
+        this.originMillis = System.currentTimeMillis();
+        this.originNanos = System.nanoTime();
+    }
+
+    /**
+     * @return how many times faster than the real time this clock runs
+     */
+    public double getTimeScale() {
+        return timeScale;
+    }
+
+    /**
+     * @return current virtual time in milliseconds. It is equal to the real time when the server starts, and then advances
+     * {@link #getTimeScale()} times faster than it.
+     */
+    public long currentTimeMillis() {
+        if (timeScale == 1) {
+            return System.currentTimeMillis();
+        }
+        return originMillis + (long) ((System.nanoTime() - originNanos) * timeScale / 1000000L);
+    }
+
+    /**
+     * Shortens the delays and speeds up the throttling of the {@code response}, which must not be shared with other requests, from
+     * virtual to real time.
+     */
+    void scale(MockResponse response) {
+        if (timeScale == 1) {
+            return;
+        }
+        response.setHeadersDelay(toReal(response.getHeadersDelay(TimeUnit.MICROSECONDS)), TimeUnit.MICROSECONDS);
+        response.setBodyDelay(toReal(response.getBodyDelay(TimeUnit.MICROSECONDS)), TimeUnit.MICROSECONDS);
+        long bytesPerPeriod = response.getThrottleBytesPerPeriod();
+        if (bytesPerPeriod != Long.MAX_VALUE) {
+            // MockWebServer sleeps whole milliseconds between the periods, so more bytes are sent per period instead of shortening it
+            double scaledBytesPerPeriod = Math.max(1, Math.min(Long.MAX_VALUE - 1, bytesPerPeriod * timeScale));
+            response.throttleBody((long) scaledBytesPerPeriod, response.getThrottlePeriod(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private long toReal(long virtualDuration) {
+        return (long) (virtualDuration / timeScale);
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock.exceptions;
+
+import org.hamcrest.Matcher;
+
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Exception thrown when the RequestVerifier can't count requests matching a matcher exactly, because some of the requests were
+ * dropped from the history according to its retention options, and the matcher wasn't registered before they were received
+ */
+public class RequestHistoryIncompleteException extends RequestVerificationException {
+
+    public RequestHistoryIncompleteException(Matcher<RecordedRequest> requestMatcher, long notRetainedRequests) {
+        super("Request = \"" + requestMatcher + "\":\n" + notRetainedRequests + " requests were dropped from the history, so requests "
+                  + "matching it can't be counted exactly. Register the verification with RequestsVerifier.registerVerification() "
+                  + "before the requests are sent, to count them as they are received");
+    }
+}
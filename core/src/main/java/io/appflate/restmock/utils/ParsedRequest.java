@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock.utils;
+
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * <p>A lazily computed view of the parts of {@link RecordedRequest} that {@link RequestMatchers} work on. Every part is computed at most
+ * once, so evaluating a number of matchers against the same request doesn't lowercase, split or re-parse its path over and over.</p>
+ * <p>Use {@link #of(RecordedRequest)} to obtain the view. While a request is being dispatched, the view is shared by all matchers
+ * evaluated for it on the dispatching thread; outside of a dispatch, each call parses the request anew.</p>
+ */
+public final class ParsedRequest {
+
+    private static final ThreadLocal<ParsedRequest> dispatchedRequest = new ThreadLocal<>();
+
+    private final RecordedRequest request;
+    private String lowerCasePath;
+    private String lowerCasePathWithoutEndingSlash;
+    private URL url;
+    private String pathWithoutQuery;
+    private String normalizedPath;
+    private String firstPathSegment;
+    private String lastPathSegment;
+    private List<String> pathSegments;
+    private QueryParams queryParams;
+
+    private ParsedRequest(RecordedRequest request) {
+        this.request = request;
+    }
+
+    /**
+     * @param request request to be parsed
+     * @return parsed view of the given {@code request}. Calls made on the thread dispatching the request, between
+     * {@link #beginDispatch(RecordedRequest)} and {@link #endDispatch()}, return the same instance.
+     */
+    public static ParsedRequest of(RecordedRequest request) {
+        ParsedRequest parsedRequest = dispatchedRequest.get();
+        return parsedRequest != null && parsedRequest.request == request ? parsedRequest : new ParsedRequest(request);
+    }
+
+    /**
+     * Shares the parsed view of the given {@code request} among matchers evaluated on the current thread. Has to be followed by
+     * {@link #endDispatch()} in a {@code finally} block, so that the thread doesn't retain the request once it's dispatched.
+     *
+     * @param request request being dispatched
+     */
+    public static void beginDispatch(RecordedRequest request) {
+        dispatchedRequest.set(new ParsedRequest(request));
+    }
+
+    /**
+     * Ends sharing of the parsed view started with {@link #beginDispatch(RecordedRequest)}.
+     */
+    public static void endDispatch() {
+        dispatchedRequest.remove();
+    }
+
+    public RecordedRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * @return request's path along with its query, lower-cased
+     */
+    public String getLowerCasePath() {
+        if (lowerCasePath == null) {
+            lowerCasePath = getPath().toLowerCase(Locale.US);
+        }
+        return lowerCasePath;
+    }
+
+    /**
+     * @return same as {@link #getLowerCasePath()} but with the ending slash removed
+     */
+    public String getLowerCasePathWithoutEndingSlash() {
+        if (lowerCasePathWithoutEndingSlash == null) {
+            lowerCasePathWithoutEndingSlash = stripEndingSlash(getLowerCasePath());
+        }
+        return lowerCasePathWithoutEndingSlash;
+    }
+
+    /**
+     * @return request's path without the query and the ending slash
+     */
+    public String getPathWithoutQuery() {
+        if (pathWithoutQuery == null) {
+            pathWithoutQuery = stripEndingSlash(getUrl().getPath());
+        }
+        return pathWithoutQuery;
+    }
+
+    /**
+     * @return lower-cased path without the query and the ending slash, always starting with a slash, f.e. {@code /users/42} for
+     * {@code /Users/42/?details=true}
+     */
+    public String getNormalizedPath() {
+        if (normalizedPath == null) {
+            normalizedPath = normalizePath(getPathWithoutQuery());
+        }
+        return normalizedPath;
+    }
+
+    /**
+     * @return lower-cased first segment of the request's path in the form comparable with {@link RouteHint#getFirstPathSegment()}, or
+     * {@code null} if the path doesn't start with a slash
+     */
+    public String getFirstPathSegment() {
+        if (firstPathSegment == null) {
+            String path = getLowerCasePath();
+            if (!path.startsWith("/")) {
+                return null;
+            }
+            int segmentEnd = path.indexOf('/', 1);
+            firstPathSegment = path.substring(1, segmentEnd < 0 ? path.length() : segmentEnd);
+        }
+        return firstPathSegment;
+    }
+
+    /**
+     * @return lower-cased last segment of the request's path (along with the query) in the form comparable with
+     * {@link RouteHint#getLastPathSegment()}
+     */
+    public String getLastPathSegment() {
+        if (lastPathSegment == null) {
+            String path = getLowerCasePathWithoutEndingSlash();
+            lastPathSegment = path.substring(path.lastIndexOf('/') + 1);
+        }
+        return lastPathSegment;
+    }
+
+    /**
+     * @return decoded segments of the request's path, without the query, f.e. {@code [Users, john doe]} for
+     * {@code /Users/john%20doe/?details=true}. Custom matchers working on path segments can use them instead of splitting the path
+     * on every evaluation.
+     */
+    public List<String> getPathSegments() {
+        if (pathSegments == null) {
+            List<String> segments = new ArrayList<>();
+            for (String segment : getPathWithoutQuery().split("/")) {
+                if (!segment.isEmpty()) {
+                    segments.add(decode(segment));
+                }
+            }
+            pathSegments = Collections.unmodifiableList(segments);
+        }
+        return pathSegments;
+    }
+
+    /**
+     * @return query parameters of the request
+     */
+    public QueryParams getQueryParams() {
+        if (queryParams == null) {
+            queryParams = QueryParams.parse(getPath());
+        }
+        return queryParams;
+    }
+
+    private String getPath() {
+        String path = request.getPath();
+        return path != null ? path : "";
+    }
+
+    private URL getUrl() {
+        if (url == null) {
+            try {
+                url = new URL("http", "localhost", getPath());
+            } catch (MalformedURLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return url;
+    }
+
+    private static String decode(String segment) {
+        if (segment.indexOf('%') < 0) {
+            return segment;
+        }
+        try {
+            return URLDecoder.decode(segment.replace("+", "%2B"), "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        } catch (IllegalArgumentException e) {
+            return segment;
+        }
+    }
+
+    /**
+     * Brings the given path (without a query) to the form of {@link #getNormalizedPath()}.
+     */
+    static String normalizePath(String path) {
+        String normalized = stripEndingSlash(path.toLowerCase(Locale.US));
+        return normalized.startsWith("/") ? normalized : "/" + normalized;
+    }
+
+    static String stripEndingSlash(String path) {
+        return path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Query parameters of a request's path, parsed in a single pass.</p>
+ * <p>Parameters are kept in flat arrays: distinct names in order of their first appearance and values in order of appearance, each one
+ * pointing to the index of its name. Keys and values are decoded only if they contain escaped characters.</p>
+ */
+public final class QueryParams {
+
+    public static final QueryParams EMPTY = new QueryParams(new String[0], 0, new String[0], new int[0], 0);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String[] names;
+    private final int namesCount;
+    private final String[] values;
+    private final int[] valueNameIndexes;
+    private final int valuesCount;
+
+    private QueryParams(String[] names, int namesCount, String[] values, int[] valueNameIndexes, int valuesCount) {
+        this.names = names;
+        this.namesCount = namesCount;
+        this.values = values;
+        this.valueNameIndexes = valueNameIndexes;
+        this.valuesCount = valuesCount;
+    }
+
+    /**
+     * Parses the query of the given {@code path} the same way {@link RestMockUtils#splitQuery(java.net.URL)} did with
+     * {@link java.net.URL#getQuery()}: the query is the part between the last {@code '?'} and the first {@code '#'}, empty pairs
+     * are kept as parameters with an empty name, except for the trailing ones, and names of pairs with no {@code '='} (or starting
+     * with it) are not decoded. Unlike {@link java.net.URLDecoder}, malformed escapes are kept as they are instead of failing.
+     *
+     * @param path request's path along with its query, f.e. {@code /users?id=1&id=2}
+     * @return parsed query parameters, {@link #EMPTY} if the path has no query
+     */
+    public static QueryParams parse(CharSequence path) {
+        int end = indexOf(path, '#', 0, path.length());
+        if (end < 0) {
+            end = path.length();
+        }
+        int start = lastIndexOf(path, '?', 0, end);
+        if (start < 0) {
+            return EMPTY;
+        }
+        start++;
+        if (isBlank(path, start, end)) {
+            return EMPTY;
+        }
+        // trailing empty pairs are skipped, as String.split() did
+        while (end > start && path.charAt(end - 1) == '&') {
+            end--;
+        }
+        if (end == start) {
+            return EMPTY;
+        }
+
+        int capacity = 1;
+        for (int i = start; i < end; i++) {
+            if (path.charAt(i) == '&') {
+                capacity++;
+            }
+        }
+        String[] names = new String[capacity];
+        String[] values = new String[capacity];
+        int[] valueNameIndexes = new int[capacity];
+        int namesCount = 0;
+        int valuesCount = 0;
+
+        int pairStart = start;
+        while (pairStart <= end) {
+            int pairEnd = indexOf(path, '&', pairStart, end);
+            if (pairEnd < 0) {
+                pairEnd = end;
+            }
+            int separator = indexOf(path, '=', pairStart, pairEnd);
+            String name;
+            String value;
+            if (separator > pairStart) {
+                name = decode(path, pairStart, separator);
+                value = separator + 1 < pairEnd ? decode(path, separator + 1, pairEnd) : null;
+            } else {
+                name = path.subSequence(pairStart, pairEnd).toString();
+                value = null;
+            }
+            int nameIndex = indexOf(names, namesCount, name);
+            if (nameIndex < 0) {
+                nameIndex = namesCount;
+                names[namesCount++] = name;
+            }
+            values[valuesCount] = value;
+            valueNameIndexes[valuesCount++] = nameIndex;
+            pairStart = pairEnd + 1;
+        }
+        return new QueryParams(names, namesCount, values, valueNameIndexes, valuesCount);
+    }
+
+    /**
+     * @return number of distinct parameter names
+     */
+    public int size() {
+        return namesCount;
+    }
+
+    /**
+     * @param index index of the parameter, from {@code 0} to {@link #size()} (exclusive)
+     * @return name of the parameter at the given {@code index}
+     */
+    public String getName(int index) {
+        if (index < 0 || index >= namesCount) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + namesCount);
+        }
+        return names[index];
+    }
+
+    /**
+     * @param name parameter's name
+     * @return true if the query contains a parameter with the given {@code name}
+     */
+    public boolean containsName(String name) {
+        return indexOf(names, namesCount, name) >= 0;
+    }
+
+    /**
+     * Checks the given {@code param} the same way as {@link QueryParam#equals(Object)} would check it against a parameter of this
+     * query, without creating the parameter.
+     *
+     * @param param expected parameter
+     * @return true if the query contains a parameter with the same name and the same values as {@code param}
+     */
+    public boolean contains(QueryParam param) {
+        int nameIndex = indexOf(names, namesCount, param.getKey());
+        if (nameIndex < 0) {
+            return false;
+        }
+        List<String> expectedValues = param.getValues();
+        int actualValuesCount = 0;
+        for (int i = 0; i < valuesCount; i++) {
+            if (valueNameIndexes[i] == nameIndex) {
+                actualValuesCount++;
+            }
+        }
+        if (actualValuesCount != expectedValues.size()) {
+            return false;
+        }
+        for (String expectedValue : expectedValues) {
+            if (!containsValue(nameIndex, expectedValue)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a list of {@link QueryParam}s with the same contents, in order of the parameters' first appearance
+     */
+    public List<QueryParam> toList() {
+        List<QueryParam> params = new ArrayList<>(namesCount);
+        for (int nameIndex = 0; nameIndex < namesCount; nameIndex++) {
+            List<String> paramValues = new ArrayList<>(1);
+            for (int i = 0; i < valuesCount; i++) {
+                if (valueNameIndexes[i] == nameIndex) {
+                    paramValues.add(values[i]);
+                }
+            }
+            params.add(new QueryParam(names[nameIndex], paramValues));
+        }
+        return params;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toList().toArray());
+    }
+
+    private boolean containsValue(int nameIndex, String value) {
+        for (int i = 0; i < valuesCount; i++) {
+            if (valueNameIndexes[i] == nameIndex && (value == null ? values[i] == null : value.equals(values[i]))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int indexOf(CharSequence text, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(CharSequence text, char c, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(String[] array, int count, String element) {
+        for (int i = 0; i < count; i++) {
+            if (array[i].equals(element)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isBlank(CharSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes {@code application/x-www-form-urlencoded} text the same way {@link java.net.URLDecoder} does, except that malformed
+     * escapes are kept as they are instead of failing.
+     */
+    private static String decode(CharSequence text, int from, int to) {
+        int firstEscape = -1;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == '%' || c == '+') {
+                firstEscape = i;
+                break;
+            }
+        }
+        if (firstEscape < 0) {
+            return text.subSequence(from, to).toString();
+        }
+
+        StringBuilder decoded = new StringBuilder(to - from);
+        decoded.append(text, from, firstEscape);
+        ByteArrayOutputStream bytes = null;
+        int i = firstEscape;
+        while (i < to) {
+            char c = text.charAt(i);
+            if (c == '+') {
+                decoded.append(' ');
+                i++;
+            } else if (isEscape(text, i, to)) {
+                if (bytes == null) {
+                    bytes = new ByteArrayOutputStream();
+                } else {
+                    bytes.reset();
+                }
+                while (isEscape(text, i, to)) {
+                    bytes.write((hexValue(text, i + 1) << 4) + hexValue(text, i + 2));
+                    i += 3;
+                }
+                decoded.append(new String(bytes.toByteArray(), UTF_8));
+            } else {
+                decoded.append(c);
+                i++;
+            }
+        }
+        return decoded.toString();
+    }
+
+    private static boolean isEscape(CharSequence text, int index, int to) {
+        return index + 2 < to && text.charAt(index) == '%' && hexValue(text, index + 1) >= 0 && hexValue(text, index + 2) >= 0;
+    }
+
+    private static int hexValue(CharSequence text, int index) {
+        return Character.digit(text.charAt(index), 16);
+    }
+}
@@ -29,9 +29,37 @@ import okhttp3.mockwebserver.RecordedRequest;
 public abstract class RequestMatcher extends TypeSafeMatcher<RecordedRequest> {
 
     private final String description;
+    private final RouteHint routeHint;
+    private final boolean cacheable;
 
     public RequestMatcher(String description) {
+        this(description, RouteHint.ANY, false);
+    }
+
+    RequestMatcher(String description, RouteHint routeHint) {
+        this(description, routeHint, true);
+    }
+
+    RequestMatcher(String description, RouteHint routeHint, boolean cacheable) {
         this.description = description;
+        this.routeHint = routeHint;
+        this.cacheable = cacheable;
+    }
+
+    RouteHint getRouteHint() {
+        return routeHint;
+    }
+
+    /**
+     * Returns whether the result of this matcher depends only on the request's method, path (along with the query) and header names.
+     * Results of cacheable matchers are reused by {@code RESTMockServer} for requests of the same shape, while the other ones are
+     * evaluated for every request. All of the matchers from {@link RequestMatchers} are cacheable, custom ones are not, unless they
+     * override this method.
+     *
+     * @return {@code true} if the result of this matcher can be reused for requests of the same shape
+     */
+    public boolean isCacheable() {
+        return cacheable;
     }
 
     @Override
@@ -16,7 +16,9 @@
 
 package io.appflate.restmock.utils;
 
-import java.io.UnsupportedEncodingException;
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -24,8 +26,8 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.regex.Pattern;
 
-import io.appflate.restmock.RESTMockServer;
 import okhttp3.mockwebserver.RecordedRequest;
 
 public final class RequestMatchers {
@@ -35,66 +37,109 @@ public final class RequestMatchers {
     }
 
     public static RequestMatcher pathContains(final String urlPart) {
-        return new RequestMatcher("path contains: " + urlPart) {
+        final String lowerCaseUrlPart = urlPart.toLowerCase(Locale.US);
+        return new RequestMatcher("path contains: " + urlPart, RouteHint.ANY) {
 
             @Override
             protected boolean matchesSafely(RecordedRequest item) {
-                return item.getPath().toLowerCase(Locale.US).contains(urlPart.toLowerCase(Locale.US));
+                return ParsedRequest.of(item).getLowerCasePath().contains(lowerCaseUrlPart);
             }
         };
     }
 
     public static RequestMatcher pathDoesNotContain(final String urlPart) {
-        return new RequestMatcher("path does not contain: " + urlPart) {
+        final String lowerCaseUrlPart = urlPart.toLowerCase(Locale.US);
+        return new RequestMatcher("path does not contain: " + urlPart, RouteHint.ANY) {
 
             @Override
             protected boolean matchesSafely(RecordedRequest item) {
-                return !item.getPath().toLowerCase(Locale.US).contains(urlPart.toLowerCase(Locale.US));
+                return !ParsedRequest.of(item).getLowerCasePath().contains(lowerCaseUrlPart);
             }
         };
     }
 
+    /**
+     * Checks whether the whole lower-cased path of matched request (along with its query) matches the given regular expression.
+     * The expression is compiled once, when the matcher is created.
+     *
+     * @param pattern regular expression the path should match, see {@link Pattern}
+     * @return A new {@link RequestMatcher} object that will match {@link RecordedRequest} if its path matches the {@code pattern}
+     * @throws java.util.regex.PatternSyntaxException if the {@code pattern} is invalid
+     */
     public static RequestMatcher pathMatchesRegex(final String pattern) {
-        return new RequestMatcher("path matches with regex:" + pattern) {
+        final Pattern compiledPattern = Pattern.compile(pattern);
+        return new RequestMatcher("path matches with regex:" + pattern, RouteHint.forPathPattern(compiledPattern)) {
 
             @Override
             protected boolean matchesSafely(RecordedRequest item) {
-                return item.getPath().toLowerCase(Locale.US).matches(pattern);
+                return compiledPattern.matcher(ParsedRequest.of(item).getLowerCasePath()).matches();
             }
         };
     }
 
     public static RequestMatcher pathEndsWith(final String urlPart) {
-        return new RequestMatcher("path ends with: " + urlPart) {
+        final String urlPartWithoutEndingSlash = ParsedRequest.stripEndingSlash(urlPart.toLowerCase(Locale.US));
+        return new RequestMatcher("path ends with: " + urlPart, RouteHint.forPathEnd(urlPart)) {
 
             @Override
             protected boolean matchesSafely(RecordedRequest item) {
-                String urlPartWithoutEndingSlash = urlPart.replaceAll("/$", "");
-                String itemPathWithoutEndingSlash = item.getPath().replaceAll("/$", "");
-                return itemPathWithoutEndingSlash.toLowerCase(Locale.US).endsWith(urlPartWithoutEndingSlash.toLowerCase(Locale.US));
+                return ParsedRequest.of(item).getLowerCasePathWithoutEndingSlash().endsWith(urlPartWithoutEndingSlash);
             }
         };
     }
 
     public static RequestMatcher pathEndsWithIgnoringQueryParams(final String endOfUrlPath) {
-        return new RequestMatcher("path ends with: ${endOfUrlPath}") {
+        final String endOfPathSanitized = sanitizePath(endOfUrlPath);
+        return new RequestMatcher("path ends with: ${endOfUrlPath}", RouteHint.ANY) {
 
             protected boolean matchesSafely(RecordedRequest item) {
-                String endOfPathSanitized = sanitizePath(endOfUrlPath);
-                String recordedPathSanitized = sanitizePath(item.getPath());
-                return recordedPathSanitized.endsWith(endOfPathSanitized);
+                return ParsedRequest.of(item).getPathWithoutQuery().endsWith(endOfPathSanitized);
             }
         };
     }
 
     private static String sanitizePath(String path) {
         try {
-            return new URL("http", "localhost", path).getPath().replaceAll("/$", "");
+            return ParsedRequest.stripEndingSlash(new URL("http", "localhost", path).getPath());
         } catch (MalformedURLException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Checks whether matched request's path, ignoring its query, letter case and the ending slash, is equal to the given
+     * {@code path}. Matchers created this way are resolved by {@code RESTMockServer} with a hash lookup, so they are the cheapest ones
+     * to match no matter how many mocks are registered. Example: {@code pathIs("/v2/users/42")} would match
+     * {@code https://localhost:4583/v2/users/42/?details=true}
+     *
+     * @param path the whole expected path, without the query
+     * @return A new {@link RequestMatcher} object that will match {@link RecordedRequest} if its path is equal to the given
+     * {@code path}
+     */
+    public static RequestMatcher pathIs(final String path) {
+        final String normalizedPath = ParsedRequest.normalizePath(path);
+        return new RequestMatcher("path is: " + path, RouteHint.forExactPath(normalizedPath)) {
+
+            @Override
+            protected boolean matchesSafely(RecordedRequest item) {
+                return ParsedRequest.of(item).getNormalizedPath().equals(normalizedPath);
+            }
+        };
+    }
+
+    /**
+     * Same as {@link #pathIs(String)}, but matches the request only if it has exactly the given query parameters, see
+     * {@link #hasExactQueryParameters(QueryParam...)}.
+     *
+     * @param path           the whole expected path, without the query
+     * @param expectedParams query parameters the request has to have
+     * @return A new {@link RequestMatcher} object that will match {@link RecordedRequest} if its path is equal to the given
+     * {@code path} and its query parameters are equal to {@code expectedParams}
+     */
+    public static RequestMatcher pathIs(final String path, final QueryParam... expectedParams) {
+        return allOf(pathIs(path), hasExactQueryParameters(expectedParams));
+    }
+
     /**
      * Checks whether matched request's path starts with given string.
      * path is a part of the url after the server's url. Example:
@@ -105,11 +150,12 @@ public final class RequestMatchers {
      * path starts with given urlPart
      */
     public static RequestMatcher pathStartsWith(final String urlPart) {
-        return new RequestMatcher("path starts with: " + urlPart) {
+        final String lowerCaseUrlPart = urlPart.toLowerCase(Locale.US);
+        return new RequestMatcher("path starts with: " + urlPart, RouteHint.forPathStart(urlPart)) {
 
             @Override
             protected boolean matchesSafely(RecordedRequest item) {
-                return item.getPath().toLowerCase(Locale.US).startsWith(urlPart.toLowerCase(Locale.US));
+                return ParsedRequest.of(item).getLowerCasePath().startsWith(lowerCaseUrlPart);
             }
         };
     }
@@ -122,7 +168,7 @@ public final class RequestMatchers {
      * contains specified header names
      */
     public static RequestMatcher hasHeaderNames(final String... headerNames) {
-        return new RequestMatcher("has headers: " + Arrays.toString(headerNames)) {
+        return new RequestMatcher("has headers: " + Arrays.toString(headerNames), RouteHint.ANY) {
 
             @Override
             protected boolean matchesSafely(RecordedRequest item) {
@@ -150,19 +196,11 @@ public final class RequestMatchers {
      * contains query parameters in its path.
      */
     public static RequestMatcher hasQueryParameters() {
-        return new RequestMatcher("matched query parameters") {
+        return new RequestMatcher("matched query parameters", RouteHint.ANY) {
 
             @Override
             protected boolean matchesSafely(RecordedRequest item) {
-                try {
-                    URL mockUrl = new URL("http", "localhost", item.getPath());
-                    List<QueryParam> queryParams = RestMockUtils.splitQuery(mockUrl);
-                    return queryParams.size() > 0;
-                } catch (MalformedURLException e) {
-                    return false;
-                } catch (UnsupportedEncodingException e) {
-                    return false;
-                }
+                return ParsedRequest.of(item).getQueryParams().size() > 0;
             }
         };
     }
@@ -176,34 +214,24 @@ public final class RequestMatchers {
      * contains the specified query parameters names in its path.
      */
     public static RequestMatcher hasQueryParameterNames(final String... expectedParamsNames) {
-        return new RequestMatcher("matched query parameters names") {
+        final List<String> expectedParamNamesList = varArgToList(expectedParamsNames);
+        return new RequestMatcher("matched query parameters names", RouteHint.ANY) {
 
             @Override
             protected boolean matchesSafely(RecordedRequest item) {
-                try {
-                    URL mockUrl = new URL("http", "localhost", item.getPath());
-                    List<QueryParam> actualParams = RestMockUtils.splitQuery(mockUrl);
-                    if (actualParams.size() == 0 || expectedParamsNames.length == 0) {
-                        return false;
-                    }
-
-                    List<String> expectedParamNamesList = varArgToList(expectedParamsNames);
+                QueryParams actualParams = ParsedRequest.of(item).getQueryParams();
+                if (actualParams.size() == 0 || expectedParamsNames.length == 0) {
+                    return false;
+                }
 
-                    int matchedParams = 0;
-                    for (QueryParam actualParam : actualParams) {
-                        if (expectedParamNamesList.contains(actualParam.getKey())) {
-                            matchedParams++;
-                        }
+                int matchedParams = 0;
+                for (int i = 0; i < actualParams.size(); i++) {
+                    if (expectedParamNamesList.contains(actualParams.getName(i))) {
+                        matchedParams++;
                     }
-
-                    return matchedParams == expectedParamsNames.length;
-
-                } catch (MalformedURLException e) {
-                    RESTMockServer.getLogger().error("URL appears to be malformed with path: " + item.getPath());
-                    return false;
-                } catch (UnsupportedEncodingException e) {
-                    return false;
                 }
+
+                return matchedParams == expectedParamsNames.length;
             }
         };
     }
@@ -221,35 +249,27 @@ public final class RequestMatchers {
      * return false.
      */
     public static RequestMatcher hasExactQueryParameters(final QueryParam... expectedParams) {
-        return new RequestMatcher("matched query parameters") {
+        return new RequestMatcher("matched query parameters", RouteHint.ANY) {
 
             @Override
             protected boolean matchesSafely(RecordedRequest item) {
-                try {
-                    URL mockUrl = new URL("http", "localhost", item.getPath());
-                    List<QueryParam> actualParams = RestMockUtils.splitQuery(mockUrl);
-                    if (actualParams.size() == 0 || actualParams.size() != expectedParams.length) {
-                        return false;
-                    }
+                QueryParams actualParams = ParsedRequest.of(item).getQueryParams();
+                if (actualParams.size() == 0 || actualParams.size() != expectedParams.length) {
+                    return false;
+                }
 
-                    for (QueryParam param : expectedParams) {
-                        if (!actualParams.contains(param)) {
-                            return false;
-                        }
+                for (QueryParam param : expectedParams) {
+                    if (!actualParams.contains(param)) {
+                        return false;
                     }
-                    return true;
-                } catch (MalformedURLException e) {
-                    RESTMockServer.getLogger().error("URL appears to be malformed with path: " + item.getPath());
-                    return false;
-                } catch (UnsupportedEncodingException e) {
-                    return false;
                 }
+                return true;
             }
         };
     }
 
     public static RequestMatcher httpMethodIs(final String method) {
-        return new RequestMatcher("HTTP method is: " + method) {
+        return new RequestMatcher("HTTP method is: " + method, RouteHint.forMethod(method)) {
 
             @Override
             protected boolean matchesSafely(final RecordedRequest item) {
@@ -258,6 +278,41 @@ public final class RequestMatchers {
         };
     }
 
+    /**
+     * Creates a {@link RequestMatcher} that matches a {@link RecordedRequest} only if all of the given {@code matchers} match it.
+     * Unlike hamcrest's {@link org.hamcrest.core.AllOf}, the resulting matcher exposes the {@link RouteHint} of the combined
+     * matchers, which lets {@code RESTMockServer} skip evaluating it for requests it can't match. The resulting matcher is
+     * {@link RequestMatcher#isCacheable() cacheable} only if all of the given {@code matchers} are.
+     *
+     * @param matchers matchers that all have to match the request
+     * @return A new {@link RequestMatcher} object that will match {@link RecordedRequest} if all of {@code matchers} match it
+     */
+    @SafeVarargs
+    public static RequestMatcher allOf(Matcher<RecordedRequest>... matchers) {
+        final List<Matcher<RecordedRequest>> allMatchers = new ArrayList<>(matchers.length);
+        RouteHint routeHint = RouteHint.ANY;
+        boolean cacheable = true;
+        for (Matcher<RecordedRequest> matcher : matchers) {
+            allMatchers.add(matcher);
+            routeHint = routeHint.and(RouteHint.of(matcher));
+            cacheable &= matcher instanceof RequestMatcher && ((RequestMatcher) matcher).isCacheable();
+        }
+        StringDescription description = new StringDescription();
+        description.appendList("(", " and ", ")", allMatchers);
+        return new RequestMatcher(description.toString(), routeHint, cacheable) {
+
+            @Override
+            protected boolean matchesSafely(RecordedRequest item) {
+                for (Matcher<RecordedRequest> matcher : allMatchers) {
+                    if (!matcher.matches(item)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
     public static RequestMatcher isGET() {
         return httpMethodIs("GET");
     }
@@ -16,26 +16,47 @@
 
 package io.appflate.restmock.utils;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
-import java.net.URLDecoder;
-import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
+import io.appflate.restmock.RESTMockBinaryFileParser;
 import io.appflate.restmock.RESTMockFileParser;
 import okhttp3.mockwebserver.MockResponse;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
 
 public final class RestMockUtils {
 
     public static MockResponse createResponseFromFile(RESTMockFileParser RESTMockFileParser, String jsonFilePath,
                                                       int responseCode) throws Exception {
+        if (RESTMockFileParser instanceof RESTMockBinaryFileParser) {
+            byte[] fileContents = ((RESTMockBinaryFileParser) RESTMockFileParser).readBytes(jsonFilePath);
+            return new MockResponse().setResponseCode(responseCode).setBody(new Buffer().write(fileContents));
+        }
         String fileContents = RESTMockFileParser.readJsonFile(jsonFilePath);
         return new MockResponse().setResponseCode(responseCode).setBody(fileContents);
     }
 
+    /**
+     * Reads all of the bytes from the given {@code inputStream} and closes it.
+     *
+     * @param inputStream stream to read
+     * @return bytes read from the stream
+     * @throws IOException if reading the stream fails
+     */
+    public static byte[] readBytes(InputStream inputStream) throws IOException {
+        BufferedSource source = Okio.buffer(Okio.source(inputStream));
+        try {
+            return source.readByteArray();
+        } finally {
+            source.close();
+        }
+    }
+
     /**
      * Extract query parameters from a {@link URL}.
      *
@@ -43,38 +64,10 @@ public final class RestMockUtils {
      * @return A {@link List} of {@link QueryParam} objects. Each parameter has one key, and zero or
      * more values.
      * @throws UnsupportedEncodingException If unable to decode from UTF-8. This should never happen.
+     * @see QueryParams#parse(CharSequence) for matching parameters without creating the list.
      */
     public static List<QueryParam> splitQuery(URL url) throws UnsupportedEncodingException {
-        final Map<String, List<String>> queryPairs = new LinkedHashMap<>();
-
-        String query = url.getQuery();
-        if (query == null || query.trim().length() == 0) {
-            return Collections.emptyList();
-        }
-
-        final String[] pairs = query.split("&");
-        for (String pair : pairs) {
-            final int idx = pair.indexOf("=");
-            final String key = idx > 0 ? URLDecoder.decode(pair.substring(0, idx), "UTF-8") : pair;
-            List<String> valueList = new LinkedList<>();
-
-            if (queryPairs.containsKey(key)) {
-                valueList = queryPairs.get(key);
-            }
-
-            final String value = idx > 0 && pair.length() > idx + 1 ? URLDecoder.decode(pair.substring(idx + 1), "UTF-8") : null;
-            valueList.add(value);
-
-            queryPairs.put(key, valueList);
-        }
-
-        List<QueryParam> finalParamList = new LinkedList<>();
-        for (Map.Entry<String, List<String>> entry : queryPairs.entrySet()) {
-            QueryParam nextFinalParam = new QueryParam(entry.getKey(), entry.getValue());
-            finalParamList.add(nextFinalParam);
-        }
-
-        return finalParamList;
+        return QueryParams.parse(url.getFile()).toList();
     }
 
     private RestMockUtils() {
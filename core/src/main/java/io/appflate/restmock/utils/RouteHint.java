@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock.utils;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import org.hamcrest.Matcher;
+
+/**
+ * <p>Describes the parts of a request's route (HTTP method and path segments) that a {@link RequestMatcher} requires in order to
+ * match. {@code RESTMockServer} uses it to index mocks, so that only the mocks that can possibly match an incoming request get
+ * evaluated.</p>
+ * <p>A {@code null} part means that the matcher doesn't put any exact constraint on it. Matchers that are not created by
+ * {@link RequestMatchers} are described by {@link #ANY}.</p>
+ */
+public final class RouteHint {
+
+    public static final RouteHint ANY = new RouteHint(null, null, null, null, null);
+
+    private final String method;
+    private final String exactPath;
+    private final String firstPathSegment;
+    private final String lastPathSegment;
+    private final Pattern pathPattern;
+
+    private RouteHint(String method, String exactPath, String firstPathSegment, String lastPathSegment, Pattern pathPattern) {
+        this.method = method;
+        this.exactPath = exactPath;
+        this.firstPathSegment = firstPathSegment;
+        this.lastPathSegment = lastPathSegment;
+        this.pathPattern = pathPattern;
+    }
+
+    /**
+     * @param matcher matcher to describe
+     * @return route parts required by the given {@code matcher}, or {@link #ANY} if they are unknown
+     */
+    public static RouteHint of(Matcher<?> matcher) {
+        if (matcher instanceof RequestMatcher) {
+            return ((RequestMatcher) matcher).getRouteHint();
+        }
+        return ANY;
+    }
+
+    static RouteHint forMethod(String method) {
+        return new RouteHint(method.toUpperCase(Locale.US), null, null, null, null);
+    }
+
+    /**
+     * The first segment is known only if {@code urlPart} contains the whole first segment along with the slash following it,
+     * f.e. {@code "/users/"}.
+     */
+    static RouteHint forPathStart(String urlPart) {
+        String lowerCasePart = urlPart.toLowerCase(Locale.US);
+        int segmentEnd = lowerCasePart.indexOf('/', 1);
+        if (!lowerCasePart.startsWith("/") || segmentEnd < 0) {
+            return ANY;
+        }
+        return new RouteHint(null, null, lowerCasePart.substring(1, segmentEnd), null, null);
+    }
+
+    /**
+     * The last segment is known only if {@code urlPart} contains a slash, otherwise it could be a suffix of a longer segment.
+     */
+    static RouteHint forPathEnd(String urlPart) {
+        String normalizedPart = ParsedRequest.stripEndingSlash(urlPart.toLowerCase(Locale.US));
+        int segmentStart = normalizedPart.lastIndexOf('/');
+        if (segmentStart < 0) {
+            return ANY;
+        }
+        return new RouteHint(null, null, null, normalizedPart.substring(segmentStart + 1), null);
+    }
+
+    /**
+     * @param normalizedPath path in the form returned by {@link ParsedRequest#getNormalizedPath()}
+     */
+    static RouteHint forExactPath(String normalizedPath) {
+        return new RouteHint(null, normalizedPath, null, null, null);
+    }
+
+    static RouteHint forPathPattern(Pattern pathPattern) {
+        return new RouteHint(null, null, null, null, pathPattern);
+    }
+
+    RouteHint and(RouteHint other) {
+        return new RouteHint(method != null ? method : other.method,
+                             exactPath != null ? exactPath : other.exactPath,
+                             firstPathSegment != null ? firstPathSegment : other.firstPathSegment,
+                             lastPathSegment != null ? lastPathSegment : other.lastPathSegment,
+                             pathPattern != null ? pathPattern : other.pathPattern);
+    }
+
+    /**
+     * @return upper-cased HTTP method required by the matcher, or {@code null} if any method can match.
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return path the request's {@link ParsedRequest#getNormalizedPath()} has to be equal to, or {@code null} if it's not known.
+     */
+    public String getExactPath() {
+        return exactPath;
+    }
+
+    /**
+     * @return lower-cased first path segment required by the matcher, or {@code null} if it's not known.
+     */
+    public String getFirstPathSegment() {
+        return firstPathSegment;
+    }
+
+    /**
+     * @return lower-cased last path segment required by the matcher, or {@code null} if it's not known.
+     */
+    public String getLastPathSegment() {
+        return lastPathSegment;
+    }
+
+    /**
+     * @return pattern the whole lower-cased path (along with the query) has to match, or {@code null} if there's none.
+     */
+    public Pattern getPathPattern() {
+        return pathPattern;
+    }
+}
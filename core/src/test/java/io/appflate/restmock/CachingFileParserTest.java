@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import org.junit.Test;
+
+import static junit.framework.TestCase.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CachingFileParserTest {
+
+    private final RESTMockFileParser delegate = mock(RESTMockFileParser.class);
+
+    @Test
+    public void filesAreReadOnce() throws Exception {
+        when(delegate.readJsonFile("users.json")).thenReturn("[]");
+        CachingFileParser parser = new CachingFileParser(delegate, 1024);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("[]", parser.readJsonFile("users.json"));
+        }
+        verify(delegate, times(1)).readJsonFile("users.json");
+        assertEquals(4, parser.getCachedBytes());
+
+        parser.clear();
+        parser.readJsonFile("users.json");
+        verify(delegate, times(2)).readJsonFile("users.json");
+    }
+
+    @Test
+    public void filesReadBothWaysAreCachedOnce() throws Exception {
+        RESTMockBinaryFileParser binaryDelegate = mock(RESTMockBinaryFileParser.class);
+        when(binaryDelegate.readBytes("users.json")).thenReturn(new byte[] {'[', ']'});
+        CachingFileParser parser = new CachingFileParser(binaryDelegate, 1024);
+
+        parser.readBytes("users.json");
+        parser.readBytes("users.json");
+        assertEquals("[]", parser.readJsonFile("users.json"));
+        verify(binaryDelegate, times(1)).readBytes("users.json");
+        verify(binaryDelegate, never()).readJsonFile("users.json");
+        assertEquals(2, parser.getCachedBytes());
+
+        CachingFileParser textParser = new CachingFileParser(delegate, 1024);
+        when(delegate.readJsonFile("users.json")).thenReturn("[]");
+        textParser.readJsonFile("users.json");
+        assertEquals("[]", new String(textParser.readBytes("users.json"), "UTF-8"));
+        verify(delegate, times(1)).readJsonFile("users.json");
+        assertEquals(4, textParser.getCachedBytes());
+    }
+
+    @Test
+    public void leastRecentlyUsedFilesAreEvicted() throws Exception {
+        when(delegate.readJsonFile("a.json")).thenReturn("aaaa");
+        when(delegate.readJsonFile("b.json")).thenReturn("bbbb");
+        when(delegate.readJsonFile("c.json")).thenReturn("cccc");
+        when(delegate.readJsonFile("big.json")).thenReturn("0123456789abcdef");
+        CachingFileParser parser = new CachingFileParser(delegate, 16);
+
+        parser.readJsonFile("a.json");
+        parser.readJsonFile("b.json");
+        parser.readJsonFile("a.json");
+        parser.readJsonFile("c.json");
+        assertEquals(16, parser.getCachedBytes());
+        parser.readJsonFile("a.json");
+        parser.readJsonFile("b.json");
+        verify(delegate, times(1)).readJsonFile("a.json");
+        verify(delegate, times(2)).readJsonFile("b.json");
+
+        parser.readJsonFile("big.json");
+        parser.readJsonFile("big.json");
+        verify(delegate, times(2)).readJsonFile("big.json");
+        assertEquals(16, parser.getCachedBytes());
+    }
+}
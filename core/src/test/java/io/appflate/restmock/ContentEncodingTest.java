@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import org.junit.Test;
+
+import static io.appflate.restmock.ContentEncoding.DEFLATE;
+import static io.appflate.restmock.ContentEncoding.GZIP;
+import static io.appflate.restmock.ContentEncoding.negotiate;
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNull;
+
+public class ContentEncodingTest {
+
+    @Test
+    public void preferredEncodingIsNegotiated() {
+        assertEquals(GZIP, negotiate("gzip, deflate"));
+        assertEquals(GZIP, negotiate("deflate, gzip"));
+        assertEquals(DEFLATE, negotiate("deflate"));
+        assertEquals(DEFLATE, negotiate("gzip;q=0.2, deflate;q=0.8"));
+        assertEquals(GZIP, negotiate("br, *"));
+        assertEquals(DEFLATE, negotiate("gzip;q=0, *;q=0.1"));
+    }
+
+    @Test
+    public void unacceptableEncodingsAreNotNegotiated() {
+        assertNull(negotiate(null));
+        assertNull(negotiate("identity"));
+        assertNull(negotiate("br"));
+        assertNull(negotiate("gzip;q=0, deflate;q=0"));
+        assertNull(negotiate("*;q=0"));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import org.junit.Test;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+
+public class FaultPolicyTest {
+
+    @Test
+    public void faultsAreInjectedWithGivenProbabilities() {
+        FaultPolicy[] policies = {
+            FaultPolicy.noResponse(0.1).withSeed(1), FaultPolicy.disconnectDuringResponseBody(0.5).withSeed(2)
+        };
+        int noResponses = 0;
+        int truncatedBodies = 0;
+        for (int i = 0; i < 10000; i++) {
+            MockResponse response = new MockResponse();
+            if (FaultPolicy.inject(response, policies)) {
+                if (response.getSocketPolicy() == SocketPolicy.NO_RESPONSE) {
+                    noResponses++;
+                } else if (response.getSocketPolicy() == SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY) {
+                    truncatedBodies++;
+                }
+            }
+        }
+        assertEquals(1000, noResponses, 150);
+        assertEquals(4500, truncatedBodies, 250);
+    }
+
+    @Test
+    public void socketPoliciesOfResponsesAreKept() {
+        MockResponse response = new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START);
+
+        assertFalse(FaultPolicy.inject(response, new FaultPolicy[] {FaultPolicy.disconnectAtEnd(1)}));
+        assertEquals(SocketPolicy.DISCONNECT_AT_START, response.getSocketPolicy());
+    }
+
+    @Test
+    public void seededPoliciesAreReproducible() {
+        FaultPolicy first = FaultPolicy.disconnectAfterRequest(0.5).withSeed(7);
+        FaultPolicy second = FaultPolicy.disconnectAfterRequest(0.5).withSeed(7);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(FaultPolicy.inject(new MockResponse(), new FaultPolicy[] {first}),
+                         FaultPolicy.inject(new MockResponse(), new FaultPolicy[] {second}));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void probabilityShouldBeWithinRange() {
+        FaultPolicy.noResponse(1.5);
+    }
+
+    @Test
+    public void neverFiringPoliciesInjectNothing() {
+        assertTrue(FaultPolicy.inject(new MockResponse(), new FaultPolicy[] {FaultPolicy.disconnectAtEnd(0), FaultPolicy.noResponse(1)}));
+        assertFalse(FaultPolicy.inject(new MockResponse(), new FaultPolicy[] {FaultPolicy.disconnectAtEnd(0)}));
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertSame;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class FilePreloaderTest {
+
+    @Test
+    public void preloadedFilesAreCached() throws Exception {
+        CachingFileParser parser = new CachingFileParser(new JVMFileParser(), 1024);
+
+        assertSame(parser, FilePreloader.preload(parser, Arrays.asList("fixtures/user.json", "fixtures/user.json"), 4));
+
+        assertEquals(parser.readBytes("fixtures/user.json").length, parser.getCachedBytes());
+    }
+
+    @Test
+    public void preloadedFilesAreKeptWithoutCachingParser() throws Exception {
+        RESTMockBinaryFileParser parser = spy(new JVMFileParser());
+
+        RESTMockFileParser preloaded = FilePreloader.preload(parser, Arrays.asList("fixtures/user.json"), 2);
+        byte[] fileContents = ((RESTMockBinaryFileParser) preloaded).readBytes("fixtures/user.json");
+        String text = preloaded.readJsonFile("fixtures/user.json");
+
+        verify(parser, times(1)).readBytes("fixtures/user.json");
+        assertEquals(new String(fileContents, "UTF-8"), text);
+        try {
+            preloaded.readJsonFile("fixtures/missing.json");
+            fail();
+        } catch (FileNotFoundException e) {
+            verify(parser, times(1)).readJsonFile("fixtures/missing.json");
+        }
+    }
+
+    @Test
+    public void missingFilesFailPreload() throws Exception {
+        try {
+            FilePreloader.preload(new JVMFileParser(), Arrays.asList("fixtures/user.json", "fixtures/missing.json"), 2);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("fixtures/missing.json"));
+            assertTrue(e.getCause() instanceof FileNotFoundException);
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void missingFilesFailServerStart() throws Exception {
+        RESTMockServerStarter.startSync(new JVMFileParser(), new RESTMockOptions.Builder().preloadFiles("fixtures/missing.json").build());
+    }
+}
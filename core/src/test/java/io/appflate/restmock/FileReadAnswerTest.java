@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import okhttp3.mockwebserver.MockResponse;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+public class FileReadAnswerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final MatchableCallsRequestDispatcher dispatcher = new MatchableCallsRequestDispatcher(new RESTMockOptions.Builder().build());
+
+    @Test
+    public void largeFilesAreReadWhole() throws Exception {
+        byte[] contents = new byte[4 * 1024 * 1024 + 13];
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = (byte) i;
+        }
+        File file = write("large.bin", contents);
+
+        MockResponse response = new FileReadAnswer(file, 200, dispatcher).answer(null);
+
+        assertTrue(Arrays.equals(contents, response.getBody().readByteArray()));
+    }
+
+    @Test
+    public void filesAreReadForEveryRequest() throws Exception {
+        File file = write("user.json", "{\"name\":\"john\"}".getBytes("UTF-8"));
+        FileReadAnswer answer = new FileReadAnswer(file, 201, dispatcher);
+        assertEquals("{\"name\":\"john\"}", answer.answer(null).getBody().readUtf8());
+
+        write("user.json", "{\"name\":\"jane\"}".getBytes("UTF-8"));
+        MockResponse response = answer.answer(null);
+
+        assertEquals("{\"name\":\"jane\"}", response.getBody().readUtf8());
+        assertTrue(response.getStatus().startsWith("HTTP/1.1 201"));
+    }
+
+    @Test
+    public void missingFilesAreAnsweredWithError() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "missing.json");
+
+        MockResponse response = new FileReadAnswer(file, 200, dispatcher).answer(null);
+
+        assertTrue(response.getStatus().startsWith("HTTP/1.1 500"));
+        assertTrue(response.getBody().readUtf8().contains("missing.json"));
+    }
+
+    private File write(String name, byte[] contents) throws IOException {
+        File file = new File(temporaryFolder.getRoot(), name);
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(contents);
+        } finally {
+            outputStream.close();
+        }
+        return file;
+    }
+}
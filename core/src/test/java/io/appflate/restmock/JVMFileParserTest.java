@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+
+import io.appflate.restmock.utils.RestMockUtils;
+import okhttp3.mockwebserver.MockResponse;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+public class JVMFileParserTest {
+
+    private static final String USER_JSON = "{\r\n  \"name\": \"zażółć\"\r\n}";
+
+    private final JVMFileParser parser = new JVMFileParser();
+
+    @Test
+    public void filesAreReadWithLineEndingsKept() throws Exception {
+        assertEquals(USER_JSON, parser.readJsonFile("fixtures/user.json"));
+        assertEquals(USER_JSON, new String(parser.readBytes("fixtures/user.json"), "UTF-8"));
+    }
+
+    @Test
+    public void responsesFromFilesHaveExactBodies() throws Exception {
+        MockResponse response = RestMockUtils.createResponseFromFile(parser, "fixtures/user.json", 201);
+        assertEquals(USER_JSON, response.getBody().readUtf8());
+        assertTrue(response.getStatus().startsWith("HTTP/1.1 201"));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void missingFilesAreReported() throws Exception {
+        parser.readBytes("fixtures/missing.json");
+    }
+}
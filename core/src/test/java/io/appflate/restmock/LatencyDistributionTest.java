@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+public class LatencyDistributionTest {
+
+    private static final int SAMPLES = 10000;
+
+    @Test
+    public void seededDistributionsAreReproducible() {
+        LatencyDistribution distribution = LatencyDistribution.logNormal(TimeUnit.MILLISECONDS, 100, 1);
+        assertTrue(Arrays.equals(sample(distribution.withSeed(42)), sample(distribution.withSeed(42))));
+    }
+
+    @Test
+    public void uniformDelaysAreWithinBounds() {
+        for (long delay : sample(LatencyDistribution.uniform(TimeUnit.SECONDS, 1, 2).withSeed(1))) {
+            assertTrue(delay >= 1000 && delay <= 2000);
+        }
+    }
+
+    @Test
+    public void normalDelaysAreNotNegative() {
+        long[] delays = sample(LatencyDistribution.normal(TimeUnit.MILLISECONDS, 10, 20).withSeed(1));
+        assertEquals(0, delays[0]);
+        assertEquals(10, delays[SAMPLES / 2], 3);
+    }
+
+    @Test
+    public void logNormalDelaysHaveGivenMedian() {
+        long[] delays = sample(LatencyDistribution.logNormal(TimeUnit.MILLISECONDS, 100, 1).withSeed(1));
+        assertEquals(100, delays[SAMPLES / 2], 5);
+        assertTrue(delays[SAMPLES * 99 / 100] > 800);
+    }
+
+    @Test
+    public void empiricalDelaysFollowPercentiles() {
+        long[] delays = sample(LatencyDistribution.empirical(TimeUnit.MILLISECONDS, new double[] {0, 50, 90, 99, 100},
+            new long[] {10, 80, 200, 1500, 2000}).withSeed(1));
+        assertEquals(10, delays[0]);
+        assertEquals(80, delays[SAMPLES / 2], 5);
+        assertEquals(200, delays[SAMPLES * 90 / 100], 20);
+        assertEquals(1500, delays[SAMPLES * 99 / 100], 100);
+        assertTrue(delays[SAMPLES - 1] <= 2000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void empiricalPercentilesShouldBeAscending() {
+        LatencyDistribution.empirical(TimeUnit.MILLISECONDS, new double[] {50, 10}, new long[] {10, 20});
+    }
+
+    private static long[] sample(LatencyDistribution distribution) {
+        long[] delays = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            delays[i] = distribution.sampleMillis();
+        }
+        Arrays.sort(delays);
+        return delays;
+    }
+}
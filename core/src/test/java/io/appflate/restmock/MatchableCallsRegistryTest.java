@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import org.hamcrest.Matcher;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import io.appflate.restmock.utils.QueryParam;
+import io.appflate.restmock.utils.RequestMatcher;
+import okhttp3.Headers;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+import static io.appflate.restmock.utils.RequestMatchers.allOf;
+import static io.appflate.restmock.utils.RequestMatchers.hasQueryParameters;
+import static io.appflate.restmock.utils.RequestMatchers.isGET;
+import static io.appflate.restmock.utils.RequestMatchers.pathEndsWith;
+import static io.appflate.restmock.utils.RequestMatchers.pathIs;
+import static io.appflate.restmock.utils.RequestMatchers.pathMatchesRegex;
+import static io.appflate.restmock.utils.RequestMatchers.pathStartsWith;
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertSame;
+import static junit.framework.TestCase.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MatchableCallsRegistryTest {
+
+    private final MatchableCallsRequestDispatcher dispatcher =
+        new MatchableCallsRequestDispatcher(new RESTMockOptions.Builder().build());
+
+    @Test
+    public void combinedRegexesMatchSameCallsAsSeparateOnes() {
+        MatchableCall users = call(allOf(isGET(), pathMatchesRegex("/users/\\d+")));
+        MatchableCall anyUser = call(pathMatchesRegex("/users/(\\w+)"));
+        MatchableCall usersWithQuery = call(allOf(pathMatchesRegex("/users/.*"), hasQueryParameters()));
+        MatchableCall repos = call(pathMatchesRegex("/(repos|orgs)/[a-z]+"));
+        MatchableCall backReference = call(pathMatchesRegex("/(a+)/\\1"));
+
+        for (boolean combinePathRegexes : new boolean[] {false, true}) {
+            MatchableCallsRegistry registry = MatchableCallsRegistry.empty(combinePathRegexes)
+                .with(users).with(anyUser).with(usersWithQuery).with(repos).with(backReference);
+
+            assertEquals(Arrays.asList(users, anyUser), registry.match(request("GET", "/users/42")));
+            assertEquals(Collections.singletonList(anyUser), registry.match(request("POST", "/users/42")));
+            assertEquals(Collections.singletonList(usersWithQuery), registry.match(request("POST", "/users/john?a=b")));
+            assertEquals(Collections.singletonList(repos), registry.match(request("GET", "/orgs/appflate")));
+            assertEquals(Collections.singletonList(backReference), registry.match(request("GET", "/aa/aa")));
+            assertTrue(registry.match(request("GET", "/teams/1")).isEmpty());
+        }
+    }
+
+    @Test
+    public void exactPathsAreMatchedAlongWithOtherCalls() {
+        MatchableCallsRegistry registry = MatchableCallsRegistry.empty(false);
+        for (int i = 0; i < 1000; i++) {
+            registry = registry.with(call(allOf(isGET(), pathIs("/v2/users/" + i))));
+        }
+        MatchableCall withQuery = call(allOf(isGET(), pathIs("/v2/users/42", new QueryParam("details", "true"))));
+        MatchableCall anyUser = call(allOf(isGET(), pathStartsWith("/v2/")));
+        registry = registry.with(withQuery).with(anyUser);
+
+        assertEquals(Arrays.asList(registry.getCalls().get(42), anyUser), registry.match(request("GET", "/V2/users/42/")));
+        assertEquals(Arrays.asList(registry.getCalls().get(42), withQuery, anyUser),
+                     registry.match(request("GET", "/v2/users/42?details=true")));
+        assertEquals(Collections.singletonList(anyUser), registry.match(request("GET", "/v2/users/1000")));
+        assertTrue(registry.match(request("POST", "/v2/users/42")).isEmpty());
+    }
+
+    @Test
+    public void firstMatchFollowsPriorityThenRegistrationOrder() {
+        MatchableCall anyUser = call(pathMatchesRegex("/users/\\d+"));
+        MatchableCall user = call(allOf(isGET(), pathIs("/users/42")));
+        MatchableCall users = call(pathStartsWith("/users/"));
+        MatchableCallsRegistry registry = MatchableCallsRegistry.empty(true).with(anyUser).with(user).with(users);
+
+        assertEquals(anyUser, registry.matchFirst(request("GET", "/users/42")));
+        assertEquals(users, registry.matchFirst(request("GET", "/users/john")));
+        assertNull(registry.matchFirst(request("GET", "/repos/42")));
+
+        user.withPriority(1);
+        users.withPriority(2);
+        registry = registry.withPriorityChanged(user).withPriorityChanged(users);
+        assertEquals(users, registry.matchFirst(request("GET", "/users/42")));
+        assertEquals(Arrays.asList(users, user, anyUser), registry.match(request("GET", "/users/42")));
+        assertEquals(Arrays.asList(anyUser, user, users), registry.getCalls());
+    }
+
+    @Test
+    public void cachedResultsAreReusedForRecentRequestsOfTheSameShape() {
+        CountingMatcher cacheable = new CountingMatcher(true);
+        CountingMatcher uncacheable = new CountingMatcher(false);
+        MatchableCall cacheableCall = call(allOf(isGET(), cacheable));
+        MatchableCall uncacheableCall = call(uncacheable);
+        MatchableCallsRegistry registry = MatchableCallsRegistry.empty(false).with(cacheableCall).with(uncacheableCall);
+        DispatchCache cache = new DispatchCache(2);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Arrays.asList(cacheableCall, uncacheableCall), registry.match(request("GET", "/users"), cache));
+        }
+        assertEquals(1, cacheable.evaluations);
+        assertEquals(3, uncacheable.evaluations);
+
+        registry.match(request("GET", "/users", "Authorization", "token"), cache);
+        registry.match(request("GET", "/users"), cache);
+        registry.match(request("GET", "/users?page=2"), cache);
+        assertEquals(3, cacheable.evaluations);
+        assertEquals(2, cache.size());
+        registry.match(request("GET", "/users"), cache);
+        assertEquals(3, cacheable.evaluations);
+        registry.match(request("GET", "/users", "Authorization", "token"), cache);
+        assertEquals(4, cacheable.evaluations);
+
+        registry = registry.with(call(pathIs("/repos")));
+        assertEquals(cacheableCall, registry.matchFirst(request("GET", "/users"), cache));
+        assertEquals(cacheableCall, registry.matchFirst(request("GET", "/users"), cache));
+        assertEquals(5, cacheable.evaluations);
+    }
+
+    @Test
+    public void callsAddedTogetherSkipDuplicates() {
+        MatchableCall first = call(pathIs("/first"));
+        MatchableCall second = call(pathIs("/second"));
+        MatchableCallsRegistry registry = MatchableCallsRegistry.empty(false).with(first);
+
+        MatchableCallsRegistry updated = registry.withAll(Arrays.asList(second, first, second));
+        assertEquals(Arrays.asList(first, second), updated.getCalls());
+        assertSame(updated, updated.withAll(Arrays.asList(first, second)));
+        assertEquals(Collections.singletonList(second), updated.match(request("GET", "/second")));
+    }
+
+    @Test
+    public void removingCallsLeavesPreviousSnapshotsIntact() {
+        MatchableCall user = call(allOf(isGET(), pathIs("/users/42")));
+        MatchableCall anyUser = call(pathMatchesRegex("/users/\\d+"));
+        MatchableCall users = call(pathStartsWith("/users/"));
+        MatchableCallsRegistry registry = MatchableCallsRegistry.empty(true).with(user).with(anyUser).with(users);
+
+        MatchableCallsRegistry updated = registry.without(anyUser).without(user);
+        assertEquals(Collections.singletonList(users), updated.match(request("GET", "/users/42")));
+        assertEquals(Collections.singletonList(users), updated.getCalls());
+        assertSame(updated, updated.without(anyUser));
+        assertEquals(Arrays.asList(user, anyUser, users), registry.match(request("GET", "/users/42")));
+
+        updated = updated.with(anyUser);
+        assertEquals(Arrays.asList(users, anyUser), updated.match(request("GET", "/users/42")));
+    }
+
+    @Test
+    public void addingCallsDoesNotReindexRegisteredCalls() {
+        List<CountingMatcher> registeredMatchers = new ArrayList<>();
+        List<MatchableCall> registered = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            CountingMatcher matcher = new CountingMatcher(i % 2 == 0);
+            registeredMatchers.add(matcher);
+            registered.add(call(matcher));
+        }
+        MatchableCallsRegistry registry = MatchableCallsRegistry.empty(false).withAll(registered);
+        int inspections = 0;
+        for (CountingMatcher matcher : registeredMatchers) {
+            inspections += matcher.inspections;
+        }
+
+        List<MatchableCall> added = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            added.add(call(pathEndsWith("/added/" + i)));
+            registry = registry.with(added.get(i));
+        }
+        registry = registry.without(added.get(42)).with(call(pathIs("/added")));
+
+        // registered calls are inspected once, when they are added, and not each time the index changes
+        int inspectionsAfterChanges = 0;
+        for (CountingMatcher matcher : registeredMatchers) {
+            inspectionsAfterChanges += matcher.inspections;
+        }
+        assertEquals(inspections, inspectionsAfterChanges);
+        assertEquals(1100, registry.getCalls().size());
+    }
+
+    @Test
+    public void patternsWithNamedGroupsAreNotCombined() {
+        assertTrue(CombinedPathPattern.isCombinable(Pattern.compile("/users/(\\d+)(?<=1)")));
+        assertFalse(CombinedPathPattern.isCombinable(Pattern.compile("/users/(?<id>\\d+)")));
+        assertFalse(CombinedPathPattern.isCombinable(Pattern.compile("/users/(\\d+)/\\1")));
+        assertNull(CombinedPathPattern.combine(Arrays.asList(Pattern.compile("(?<id>a)"), Pattern.compile("(?<id>b)"))));
+        assertEquals(1, CombinedPathPattern.combine(Arrays.asList(Pattern.compile("/a(b)?"), Pattern.compile("/a.*")))
+            .firstMatch("/ac"));
+    }
+
+    private static class CountingMatcher extends RequestMatcher {
+
+        private final boolean cacheable;
+        private int evaluations;
+        private int inspections;
+
+        CountingMatcher(boolean cacheable) {
+            super("counting");
+            this.cacheable = cacheable;
+        }
+
+        @Override
+        protected boolean matchesSafely(RecordedRequest item) {
+            evaluations++;
+            return true;
+        }
+
+        @Override
+        public boolean isCacheable() {
+            inspections++;
+            return cacheable;
+        }
+    }
+
+    private MatchableCall call(Matcher<RecordedRequest> matcher) {
+        return new MatchableCall(null, matcher, dispatcher);
+    }
+
+    static RecordedRequest request(String method, String path, String... headerNamesAndValues) {
+        Socket socket = mock(Socket.class);
+        when(socket.getLocalAddress()).thenReturn(mock(InetAddress.class));
+        Headers headers = Headers.of(headerNamesAndValues);
+        return new RecordedRequest(method + " " + path + " HTTP/1.1", headers, Collections.<Integer>emptyList(), 0, new Buffer(), 0,
+                                   socket);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+public class NetworkProfileTest {
+
+    @Test
+    public void delaysAreAddedToResponses() {
+        NetworkProfile profile = new NetworkProfile.Builder().roundTripTime(100, TimeUnit.MILLISECONDS)
+            .jitter(50, TimeUnit.MILLISECONDS)
+            .seed(1)
+            .build();
+        MockResponse response = new MockResponse().setHeadersDelay(1, TimeUnit.SECONDS);
+
+        profile.apply(response);
+
+        long headersDelay = response.getHeadersDelay(TimeUnit.MILLISECONDS);
+        assertTrue(headersDelay >= 1100 && headersDelay < 1150);
+    }
+
+    @Test
+    public void lowerThrottlesOfResponsesAreKept() {
+        NetworkProfile profile = new NetworkProfile.Builder().bandwidth(10000).build();
+        MockResponse unthrottled = new MockResponse();
+        MockResponse slower = new MockResponse().throttleBody(100, 1, TimeUnit.SECONDS);
+        MockResponse faster = new MockResponse().throttleBody(100000, 1, TimeUnit.SECONDS);
+
+        profile.apply(unthrottled);
+        profile.apply(slower);
+        profile.apply(faster);
+
+        assertEquals(1000, unthrottled.getThrottleBytesPerPeriod());
+        assertEquals(100, unthrottled.getThrottlePeriod(TimeUnit.MILLISECONDS));
+        assertEquals(100, slower.getThrottleBytesPerPeriod());
+        assertEquals(1000, faster.getThrottleBytesPerPeriod());
+    }
+
+    @Test
+    public void connectionsAreResetWithGivenProbability() {
+        NetworkProfile profile = new NetworkProfile.Builder().resetProbability(0.25).seed(1).build();
+        int resets = 0;
+        for (int i = 0; i < 10000; i++) {
+            MockResponse response = new MockResponse();
+            profile.apply(response);
+            if (response.getSocketPolicy() == SocketPolicy.DISCONNECT_AFTER_REQUEST) {
+                resets++;
+            }
+        }
+        assertEquals(2500, resets, 200);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appflate.restmock;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertSame;
+import static junit.framework.TestCase.assertTrue;
+
+public class PersistentHashMapTest {
+
+    @Test
+    public void updatesDontChangePreviousMaps() {
+        PersistentHashMap<String, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 5000; i++) {
+            map = map.with("key" + i, i);
+        }
+        PersistentHashMap<String, Integer> updated = map.with("key1", -1).without("key2");
+
+        assertEquals(5000, map.size());
+        assertEquals(4999, updated.size());
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(Integer.valueOf(i), map.get("key" + i));
+        }
+        assertEquals(Integer.valueOf(-1), updated.get("key1"));
+        assertNull(updated.get("key2"));
+        assertEquals(Integer.valueOf(3), updated.get("key3"));
+        assertSame(updated, updated.without("key2"));
+    }
+
+    @Test
+    public void keysWithEqualHashesAreKeptApart() {
+        PersistentHashMap<CollidingKey, String> map = PersistentHashMap.empty();
+        for (int i = 0; i < 3; i++) {
+            map = map.with(new CollidingKey(i), "value" + i);
+        }
+        map = map.with(new CollidingKey(1), "replaced").with(new CollidingKey(7, 99), "other");
+
+        assertEquals(4, map.size());
+        assertEquals("value0", map.get(new CollidingKey(0)));
+        assertEquals("replaced", map.get(new CollidingKey(1)));
+        assertEquals("other", map.get(new CollidingKey(7, 99)));
+        List<String> values = new ArrayList<>(map.values());
+        Collections.sort(values);
+        assertEquals("[other, replaced, value0, value2]", values.toString());
+
+        for (int i = 0; i < 3; i++) {
+            map = map.without(new CollidingKey(i));
+        }
+        map = map.without(new CollidingKey(7, 99));
+        assertTrue(map.isEmpty());
+        assertNull(map.get(new CollidingKey(0)));
+    }
+
+    private static final class CollidingKey {
+
+        private final int id;
+        private final int hash;
+
+        CollidingKey(int id) {
+            this(id, 42);
+        }
+
+        CollidingKey(int id, int hash) {
+            this.id = id;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CollidingKey && ((CollidingKey) o).id == id && ((CollidingKey) o).hash == hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -3,11 +3,18 @@ package io.appflate.restmock;
 import org.junit.Test;
 
 import java.net.URL;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import io.appflate.restmock.utils.QueryParam;
+import io.appflate.restmock.utils.QueryParams;
 import io.appflate.restmock.utils.RestMockUtils;
 
+import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertEquals;
 
@@ -47,4 +54,73 @@ public class QueryParamTest {
 
         assertEquals(0, params.size());
     }
+
+    @Test
+    public void testEncodedQueryParamsParse() {
+        QueryParams params = QueryParams.parse("/someRequest?na%20me=a+b%26c&flag&empty=#fragment");
+
+        assertEquals(3, params.size());
+        assertEquals("na me", params.getName(0));
+        assertTrue(params.contains(new QueryParam("na me", "a b&c")));
+        assertTrue(params.contains(new QueryParam("flag", (String) null)));
+        assertTrue(params.contains(new QueryParam("empty", (String) null)));
+    }
+
+    @Test
+    public void testMultipleValueQueryParamsParse() {
+        QueryParams params = QueryParams.parse("/someRequest?user_id=1&session=2&user_id=2");
+
+        assertEquals(2, params.size());
+        assertTrue(params.containsName("session"));
+        assertTrue(params.contains(new QueryParam("user_id", "2", "1")));
+        assertFalse(params.contains(new QueryParam("user_id", "1")));
+        assertFalse(params.contains(new QueryParam("user_id", "1", "3")));
+        assertEquals(QueryParams.EMPTY, QueryParams.parse("/someRequest"));
+    }
+
+    @Test
+    public void testQueryParamsParseMatchesUrlQuery() throws Exception {
+        String[] paths = {"/search?q=what?&page=2", "/a?&x=1&&y=%41&", "/a?=b&c%20d&e=f%20g#h?i", "/a?&&", "/a? ", "/a"};
+        for (String path : paths) {
+            assertEquals(path, RestMockUtilsBaseline.splitQuery(new URL("http", "localhost", path)),
+                         QueryParams.parse(path).toList());
+        }
+
+        QueryParams params = QueryParams.parse("/search?q=what?&page=2");
+        assertEquals(2, params.size());
+        assertTrue(params.contains(new QueryParam("", (String) null)));
+        assertTrue(params.contains(new QueryParam("page", "2")));
+
+        params = QueryParams.parse("/a?=b&c%20d&e=f%20g");
+        assertTrue(params.contains(new QueryParam("=b", (String) null)));
+        assertTrue(params.contains(new QueryParam("c%20d", (String) null)));
+        assertTrue(params.contains(new QueryParam("e", "f g")));
+    }
+
+    /**
+     * Query splitting as it was done with {@link URL#getQuery()} before {@link QueryParams} was introduced.
+     */
+    private static final class RestMockUtilsBaseline {
+
+        static List<QueryParam> splitQuery(URL url) throws Exception {
+            Map<String, List<String>> queryPairs = new LinkedHashMap<>();
+            String query = url.getQuery();
+            if (query == null || query.trim().length() == 0) {
+                return Collections.emptyList();
+            }
+            for (String pair : query.split("&")) {
+                int idx = pair.indexOf("=");
+                String key = idx > 0 ? URLDecoder.decode(pair.substring(0, idx), "UTF-8") : pair;
+                if (!queryPairs.containsKey(key)) {
+                    queryPairs.put(key, new ArrayList<String>());
+                }
+                queryPairs.get(key).add(idx > 0 && pair.length() > idx + 1 ? URLDecoder.decode(pair.substring(idx + 1), "UTF-8") : null);
+            }
+            List<QueryParam> params = new ArrayList<>();
+            for (Map.Entry<String, List<String>> entry : queryPairs.entrySet()) {
+                params.add(new QueryParam(entry.getKey(), entry.getValue()));
+            }
+            return params;
+        }
+    }
 }
@@ -16,27 +16,46 @@
 
 package io.appflate.restmock;
 
+import io.appflate.restmock.logging.RESTMockLogger;
 import io.appflate.restmock.utils.TestUtils;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.AbstractMap;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Inflater;
 import okhttp3.Response;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.RecordedRequest;
+import okio.GzipSource;
+import okio.InflaterSource;
+import okio.Okio;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
+import static io.appflate.restmock.utils.RequestMatchers.pathContains;
 import static io.appflate.restmock.utils.RequestMatchers.pathEndsWith;
+import static io.appflate.restmock.utils.RequestMatchers.pathIs;
+import static io.appflate.restmock.utils.RequestMatchers.pathStartsWith;
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertNotNull;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @RunWith(Parameterized.class)
 public class RESTMockServerTest {
@@ -152,6 +171,21 @@ public class RESTMockServerTest {
         TestUtils.assertNotMocked(TestUtils.delete(path));
     }
 
+    @Test
+    public void testIndexedAndResidualMocksAreMatched() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            RESTMockServer.whenGET(pathStartsWith("/users/" + i + "/")).thenReturnString("user " + i);
+        }
+        RESTMockServer.whenPOST(pathEndsWith("/users/42")).thenReturnString("posted");
+        RESTMockServer.whenGET(pathContains("repos")).thenReturnString("repos");
+        TestUtils.assertResponseWithBodyContains(TestUtils.get("users/42/profile"), 200, "user 42");
+        TestUtils.assertResponseWithBodyContains(TestUtils.post("api/users/42"), 200, "posted");
+        TestUtils.assertResponseWithBodyContains(TestUtils.get("orgs/repos"), 200, "repos");
+        TestUtils.assertMultipleMatches(TestUtils.get("users/7/repos"));
+        TestUtils.assertNotMocked(TestUtils.get("users/77/profile"));
+        TestUtils.assertNotMocked(TestUtils.put("users/42/profile"));
+    }
+
     @Test
     public void testMultipleMatches() throws Exception {
         String path = "sample";
@@ -163,6 +197,195 @@ public class RESTMockServerTest {
         TestUtils.assertMultipleMatches(TestUtils.put(path));
     }
 
+    @Test
+    public void testFirstMatchWins() throws Exception {
+        RESTMockServerStarter.startSync(fileParser, new RESTMockOptions.Builder().useHttps(useHttps).firstMatchWins(true).build());
+        String path = "sample";
+        RESTMockServer.whenRequested(pathEndsWith(path)).thenReturnString("first");
+        MatchableCall second = RESTMockServer.whenRequested(pathEndsWith(path)).thenReturnString("second");
+        TestUtils.assertResponseWithBodyContains(TestUtils.get(path), 200, "first");
+        second.withPriority(1);
+        TestUtils.assertResponseWithBodyContains(TestUtils.get(path), 200, "second");
+        TestUtils.assertNotMocked(TestUtils.get("other"));
+    }
+
+    @Test
+    public void testAmbiguousMatchesAreReportedOncePerRequestShape() throws Exception {
+        RESTMockLogger logger = mock(RESTMockLogger.class);
+        RESTMockServerStarter.startSync(fileParser, logger,
+                                        new RESTMockOptions.Builder().useHttps(useHttps).firstMatchWins(true).reportAmbiguousMatches(true)
+                                            .build());
+        RESTMockServer.whenGET(pathStartsWith("/users")).thenReturnString("users");
+        RESTMockServer.whenGET(pathIs("/users/42")).thenReturnString("user");
+        for (int i = 0; i < 5; i++) {
+            TestUtils.assertResponseWithBodyContains(TestUtils.get("users/42"), 200, "users");
+        }
+        TestUtils.assertResponseWithBodyContains(TestUtils.get("users/43"), 200, "users");
+
+        verify(logger, timeout(2000)).error(contains("Ambiguous match"));
+        Thread.sleep(100);
+        verify(logger, times(1)).error(contains("Ambiguous match"));
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        RESTMockServer.batch(new Runnable() {
+
+            @Override
+            public void run() {
+                for (int i = 0; i < 2000; i++) {
+                    RESTMockServer.whenGET(pathIs("/users/" + i)).thenReturnString("user " + i);
+                }
+                RESTMockServer.whenGET(pathIs("/repos")).thenReturnString("repos").dontSet();
+                try {
+                    TestUtils.assertNotMocked(TestUtils.get("users/1"));
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        TestUtils.assertResponseWithBodyContains(TestUtils.get("users/1999"), 200, "user 1999");
+        TestUtils.assertNotMocked(TestUtils.get("repos"));
+        verify(RESTMockServer.dispatcher, times(1)).addMatchableCalls(anyCollectionOf(MatchableCall.class));
+    }
+
+    @Test
+    public void testLazyFileLoading() throws Exception {
+        RESTMockServerStarter.startSync(fileParser, new RESTMockOptions.Builder().useHttps(useHttps).lazyFileLoading(true).build());
+        when(fileParser.readJsonFile("users.json")).thenReturn("users");
+        when(fileParser.readJsonFile("missing.json")).thenThrow(new FileNotFoundException("missing.json"));
+        RESTMockServer.whenGET(pathIs("/users")).thenReturnFile("users.json");
+        RESTMockServer.whenGET(pathIs("/missing")).thenReturnFile("missing.json");
+        verify(fileParser, never()).readJsonFile(anyString());
+
+        TestUtils.assertResponseWithBodyContains(TestUtils.get("users"), 200, "users");
+        TestUtils.assertResponseWithBodyContains(TestUtils.get("users"), 200, "users");
+        TestUtils.assertResponseWithBodyContains(TestUtils.get("missing"), 500, "FileNotFoundException");
+        verify(fileParser, times(1)).readJsonFile("users.json");
+        verify(fileParser, times(1)).readJsonFile("missing.json");
+    }
+
+    @Test
+    public void testLazyFileLoadingWithCompression() throws Exception {
+        RESTMockServerStarter.startSync(fileParser, new RESTMockOptions.Builder().useHttps(useHttps).lazyFileLoading(true).build());
+        String body = "{\"users\": [\"john\", \"jane\", \"john\", \"jane\"]}";
+        when(fileParser.readJsonFile("users.json")).thenReturn(body);
+        RESTMockServer.whenGET(pathIs("/users")).withCompression(true).thenReturnFile("users.json");
+
+        Response gzipped = TestUtils.get("users", new AbstractMap.SimpleEntry<>("Accept-Encoding", "gzip"));
+        assertEquals("gzip", gzipped.header("Content-Encoding"));
+        assertEquals(body, Okio.buffer(new GzipSource(gzipped.body().source())).readUtf8());
+        Response identity = TestUtils.get("users", new AbstractMap.SimpleEntry<>("Accept-Encoding", "identity"));
+        assertNull(identity.header("Content-Encoding"));
+        assertEquals(body, identity.body().string());
+        verify(fileParser, times(1)).readJsonFile("users.json");
+    }
+
+    @Test
+    public void testIdenticalBodiesAreStoredOnce() throws Exception {
+        RESTMockServer.whenGET(pathIs("/users/1")).thenReturnString("user");
+        RESTMockServer.whenGET(pathIs("/users/2")).thenReturnString("user", "other user");
+        RESTMockServer.whenGET(pathIs("/users/3")).thenReturn(new MockResponse().setChunkedBody("user", 2));
+        assertEquals(2, RESTMockServer.dispatcher.getBodyStore().size());
+
+        TestUtils.assertResponseWithBodyContains(TestUtils.get("users/1"), 200, "user");
+        TestUtils.assertResponseWithBodyContains(TestUtils.get("users/2"), 200, "user");
+        TestUtils.assertResponseWithBodyContains(TestUtils.get("users/2"), 200, "other user");
+        TestUtils.assertResponseWithBodyContains(TestUtils.get("users/3"), 200, "user");
+        TestUtils.assertResponseWithBodyContains(TestUtils.get("users/1"), 200, "user");
+        RESTMockServer.reset();
+        assertEquals(0, RESTMockServer.dispatcher.getBodyStore().size());
+    }
+
+    @Test
+    public void testBodiesOfRemovedMocksAreReleased() throws Exception {
+        MatchableCall first = RESTMockServer.whenGET(pathIs("/users/1")).withCompression(true).thenReturnString("user");
+        MatchableCall second = RESTMockServer.whenGET(pathIs("/users/2")).thenReturnString("user", "other user");
+        TestUtils.get("users/1", new AbstractMap.SimpleEntry<>("Accept-Encoding", "gzip"));
+        assertEquals(3, RESTMockServer.dispatcher.getBodyStore().size());
+
+        second.dontSet();
+        assertEquals(2, RESTMockServer.dispatcher.getBodyStore().size());
+        TestUtils.assertResponseWithBodyContains(TestUtils.get("users/1"), 200, "user");
+        RESTMockServer.removeMatchableCall(first);
+        assertEquals(0, RESTMockServer.dispatcher.getBodyStore().size());
+    }
+
+    @Test
+    public void testCompression() throws Exception {
+        String body = "{\"users\": [\"john\", \"jane\", \"john\", \"jane\"]}";
+        RESTMockServer.whenGET(pathIs("/users")).withCompression(true).thenReturnString(body);
+
+        Response gzipped = TestUtils.get("users", new AbstractMap.SimpleEntry<>("Accept-Encoding", "deflate;q=0.5, gzip"));
+        assertEquals("gzip", gzipped.header("Content-Encoding"));
+        assertEquals(body, Okio.buffer(new GzipSource(gzipped.body().source())).readUtf8());
+
+        Response deflated = TestUtils.get("users", new AbstractMap.SimpleEntry<>("Accept-Encoding", "gzip;q=0, deflate"));
+        assertEquals("deflate", deflated.header("Content-Encoding"));
+        assertEquals(body, Okio.buffer(new InflaterSource(deflated.body().source(), new Inflater())).readUtf8());
+
+        Response identity = TestUtils.get("users", new AbstractMap.SimpleEntry<>("Accept-Encoding", "identity"));
+        assertNull(identity.header("Content-Encoding"));
+        assertEquals("Accept-Encoding", identity.header("Vary"));
+        assertEquals(body, identity.body().string());
+    }
+
+    @Test
+    public void testNetworkProfile() throws Exception {
+        NetworkProfile profile = new NetworkProfile.Builder().roundTripTime(300, TimeUnit.MILLISECONDS).build();
+        RESTMockServerStarter.startSync(fileParser, new RESTMockOptions.Builder().useHttps(useHttps).networkProfile(profile).build());
+        RESTMockServer.whenGET(pathIs("/users")).thenReturnString("users").delayHeaders(TimeUnit.MILLISECONDS, 200);
+
+        long start = System.currentTimeMillis();
+        TestUtils.assertResponseWithBodyContains(TestUtils.get("users"), 200, "users");
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue(elapsed >= 500 && elapsed < 800);
+        start = System.currentTimeMillis();
+        TestUtils.assertNotMocked(TestUtils.get("other"));
+        elapsed = System.currentTimeMillis() - start;
+        assertTrue(elapsed >= 300 && elapsed < 600);
+    }
+
+    @Test
+    public void testTimeScale() throws Exception {
+        RESTMockServerStarter.startSync(fileParser, new RESTMockOptions.Builder().useHttps(useHttps)
+            .timeScale(100)
+            .historyMaxAge(1, TimeUnit.MINUTES)
+            .build());
+        RESTMockServer.whenGET(pathIs("/users")).thenReturnString("users").delayHeaders(TimeUnit.SECONDS, 10).delayBody(TimeUnit.SECONDS, 5);
+
+        long realStart = System.currentTimeMillis();
+        long virtualStart = RESTMockServer.getClock().currentTimeMillis();
+        TestUtils.assertResponseWithBodyContains(TestUtils.get("users"), 200, "users");
+        long realElapsed = System.currentTimeMillis() - realStart;
+        assertTrue(realElapsed >= 150 && realElapsed < 450);
+        assertTrue(RESTMockServer.getClock().currentTimeMillis() - virtualStart >= 15000);
+        assertEquals(1, RESTMockServer.dispatcher.getRequestHistory().size());
+
+        Thread.sleep(700);
+        assertEquals(0, RESTMockServer.dispatcher.getRequestHistory().size());
+    }
+
+    @Test
+    public void testFaultPolicies() throws Exception {
+        RESTMockServerStarter.startSync(fileParser, new RESTMockOptions.Builder().useHttps(useHttps)
+            .faultPolicies(FaultPolicy.disconnectAtEnd(1))
+            .build());
+        RESTMockServer.whenGET(pathIs("/users")).thenReturnString("users");
+        RESTMockServer.whenGET(pathIs("/repos")).thenReturnString("repos").withFaults(FaultPolicy.disconnectAfterRequest(1));
+
+        TestUtils.assertResponseWithBodyContains(TestUtils.get("users"), 200, "users");
+        assertEquals(1, RESTMockServer.getInjectedFaultCount());
+        try {
+            TestUtils.get("repos");
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(2, RESTMockServer.getInjectedFaultCount());
+        RESTMockServer.reset();
+        assertEquals(0, RESTMockServer.getInjectedFaultCount());
+    }
+
     @Test
     public void testThenAnswer() throws Exception {
         String path = "sample";
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static io.appflate.restmock.MatchableCallsRegistryTest.request;
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertSame;
+import static junit.framework.TestCase.assertTrue;
+
+public class RequestHistoryLogTest {
+
+    private final RequestHistoryLog log = new RequestHistoryLog();
+
+    @Test
+    public void snapshotsKeepOrderAndDontChangeOnAppend() {
+        RecordedRequest[] requests = new RecordedRequest[100];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = request("GET", "/" + i);
+            log.append(requests[i], i);
+        }
+        List<RecordedRequest> snapshot = log.snapshot(0);
+        log.append(request("GET", "/next"), 100);
+
+        assertEquals(100, snapshot.size());
+        assertEquals(101, log.snapshot(0).size());
+        for (int i = 0; i < requests.length; i++) {
+            assertSame(requests[i], snapshot.get(i));
+        }
+        assertEquals(5, snapshot.subList(95, 100).size());
+
+        log.clear();
+        assertTrue(log.snapshot(0).isEmpty());
+        assertEquals(100, snapshot.size());
+    }
+
+    @Test
+    public void evictedRequestsAreReportedOnce() {
+        final List<RecordedRequest> evicted = new ArrayList<>();
+        RequestHistoryLog boundedLog = new RequestHistoryLog(1500, 1000, new RequestHistoryLog.EvictionListener() {
+
+            @Override
+            public void onEvicted(RecordedRequest request) {
+                evicted.add(request);
+            }
+        });
+        RecordedRequest[] requests = new RecordedRequest[3 * RequestHistoryLog.CHUNK_SIZE];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = request("GET", "/" + i);
+            boundedLog.append(requests[i], i);
+        }
+
+        List<RecordedRequest> snapshot = boundedLog.snapshot(requests.length);
+        assertEquals(1000, snapshot.size());
+        assertSame(requests[requests.length - 1000], snapshot.get(0));
+        assertSame(requests[requests.length - 1], snapshot.get(999));
+        assertEquals(requests.length - 1000, evicted.size());
+        for (int i = 0; i < evicted.size(); i++) {
+            assertSame(requests[i], evicted.get(i));
+        }
+
+        assertTrue(boundedLog.snapshot(2 * requests.length).isEmpty());
+        assertEquals(1000, snapshot.size());
+        assertEquals(requests.length, evicted.size());
+    }
+
+    @Test
+    public void concurrentAppendsAreAllRecorded() throws Exception {
+        final int threads = 8;
+        final int requestsPerThread = 500;
+        final RecordedRequest request = request("GET", "/");
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < requestsPerThread; j++) {
+                        log.append(request, j);
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        List<RecordedRequest> snapshot = log.snapshot(0);
+        assertEquals(threads * requestsPerThread, snapshot.size());
+        for (RecordedRequest recorded : snapshot) {
+            assertSame(request, recorded);
+        }
+    }
+}
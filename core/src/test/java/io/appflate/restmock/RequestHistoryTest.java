@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.appflate.restmock;
+
+import org.hamcrest.Matcher;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import io.appflate.restmock.utils.RequestMatcher;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static io.appflate.restmock.MatchableCallsRegistryTest.request;
+import static io.appflate.restmock.utils.RequestMatchers.isGET;
+import static io.appflate.restmock.utils.RequestMatchers.pathStartsWith;
+import static junit.framework.TestCase.assertEquals;
+
+public class RequestHistoryTest {
+
+    @Test
+    public void trackedCountsAreIncompleteIfRequestsWereDroppedBeforeTracking() {
+        RequestHistory history = new RequestHistory(new RESTMockOptions.Builder().historyMatchedOnly(true).build(), new VirtualClock(1));
+        Matcher<RecordedRequest> earlyMatcher = pathStartsWith("/users/");
+        history.track(earlyMatcher);
+        history.record(request("GET", "/users/1"), false);
+        history.record(request("GET", "/users/2"), true);
+
+        Matcher<RecordedRequest> lateMatcher = isGET();
+        history.track(lateMatcher);
+        assertEquals(1, history.countNotRetained());
+        assertEquals(2, history.countTracked(earlyMatcher));
+        assertEquals(-1, history.countTracked(lateMatcher));
+
+        history.clear();
+        history.record(request("GET", "/users/3"), false);
+        assertEquals(1, history.countNotRetained());
+        assertEquals(1, history.countTracked(earlyMatcher));
+        assertEquals(1, history.countTracked(lateMatcher));
+    }
+
+    @Test
+    public void requestsRecordedWhileTrackingStartsAreCountedOnce() throws Exception {
+        final RequestHistory history = new RequestHistory(new RESTMockOptions.Builder().build(), new VirtualClock(1));
+        final RecordedRequest[] requests = new RecordedRequest[10];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = request("GET", "/users/" + i);
+        }
+        final int threads = 4;
+        final int requestsPerThread = 20000;
+        final CountDownLatch started = new CountDownLatch(threads);
+        List<Thread> recorders = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread recorder = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    started.countDown();
+                    for (int j = 0; j < requestsPerThread; j++) {
+                        history.record(requests[j % requests.length], true);
+                    }
+                }
+            });
+            recorders.add(recorder);
+            recorder.start();
+        }
+        started.await();
+        final Thread trackingThread = Thread.currentThread();
+        Matcher<RecordedRequest> matcher = new RequestMatcher("slow on the tracking thread") {
+
+            @Override
+            protected boolean matchesSafely(RecordedRequest item) {
+                if (Thread.currentThread() == trackingThread) {
+                    // widens the window between counting the recorded requests and tracking the new ones
+                    Thread.yield();
+                }
+                return true;
+            }
+        };
+        history.track(matcher);
+        for (Thread recorder : recorders) {
+            recorder.join();
+        }
+
+        assertEquals(threads * requestsPerThread, history.countTracked(matcher));
+    }
+}
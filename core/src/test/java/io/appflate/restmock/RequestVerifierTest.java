@@ -30,6 +30,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
 
+import io.appflate.restmock.exceptions.RequestHistoryIncompleteException;
 import io.appflate.restmock.exceptions.RequestInvocationCountMismatchException;
 import io.appflate.restmock.exceptions.RequestInvocationCountNotEnoughException;
 import io.appflate.restmock.exceptions.RequestNotInvokedException;
@@ -42,9 +43,14 @@ import static io.appflate.restmock.RequestsVerifier.verifyGET;
 import static io.appflate.restmock.RequestsVerifier.verifyPOST;
 import static io.appflate.restmock.RequestsVerifier.verifyPUT;
 import static io.appflate.restmock.RequestsVerifier.verifyRequest;
+import static io.appflate.restmock.utils.RequestMatchers.isGET;
+import static io.appflate.restmock.utils.RequestMatchers.isPOST;
 import static io.appflate.restmock.utils.RequestMatchers.pathEndsWith;
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+import static org.hamcrest.core.AllOf.allOf;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 
@@ -100,6 +106,47 @@ public class RequestVerifierTest {
         verifyRequest(INVOKED_MATCHER).atLeast(3);
     }
 
+    @Test
+    public void testVerificationsCountRequestsNotKeptInHistory() throws Exception {
+        RESTMockServerStarter.startSync(mock(RESTMockFileParser.class), new RESTMockOptions.Builder().useHttps(useHttps)
+            .historyMaxSize(2)
+            .historyMatchedOnly(true)
+            .build());
+        MatchableCall call = RESTMockServer.whenGET(pathEndsWith(path)).thenReturnString("a single call");
+        RequestsVerifier.RequestVerification getVerification = RequestsVerifier.registerVerification(allOf(isGET(), INVOKED_MATCHER));
+        RequestsVerifier.RequestVerification postVerification = RequestsVerifier.registerVerification(allOf(isPOST(), INVOKED_MATCHER));
+        for (int i = 0; i < 5; i++) {
+            TestUtils.get(path);
+        }
+        TestUtils.get("else");
+        TestUtils.post(path);
+        assertEquals(2, RequestsVerifier.takeAllMatching(INVOKED_MATCHER).size());
+        getVerification.exactly(5);
+        postVerification.exactly(1);
+        assertEquals(5, call.getInvocationCount());
+        try {
+            verifyRequest(INVOKED_MATCHER).atLeast(6);
+            fail();
+        } catch (RequestHistoryIncompleteException e) {
+            assertTrue(e.getMessage().contains("registerVerification"));
+        }
+    }
+
+    @Test
+    public void testRegisteredVerifications() throws Exception {
+        RESTMockServer.whenRequested(pathEndsWith(path)).thenReturnString("a single call");
+        TestUtils.get(path);
+        RequestsVerifier.RequestVerification verification = RequestsVerifier.registerVerification(INVOKED_MATCHER);
+        verification.invoked();
+        TestUtils.get(path);
+        TestUtils.post(path);
+        verification.exactly(3);
+        verifyRequest(INVOKED_MATCHER).atLeast(3);
+        verifyGET(INVOKED_MATCHER).exactly(2);
+        RESTMockServer.reset();
+        verification.never();
+    }
+
     @Test
     public void testHTTPMethodVerifier() throws Exception {
         RESTMockServer.whenRequested(pathEndsWith(path)).thenReturnString("a single call");
@@ -210,6 +257,20 @@ public class RequestVerifierTest {
         assertEquals("HEAD", Objects.requireNonNull(recordedRequests.get(2).getMethod()).toUpperCase(Locale.US));
     }
 
+    @Test
+    public void takenRequestsCanBeModified() throws Exception {
+        RESTMockServer.whenRequested(pathEndsWith(path)).thenReturnString("a single call");
+        TestUtils.get(path);
+        TestUtils.post(path);
+
+        List<RecordedRequest> recordedRequests = RequestsVerifier.takeLast(2);
+        recordedRequests.remove(0);
+        recordedRequests.addAll(RequestsVerifier.takeFirst(1));
+        recordedRequests.addAll(RequestsVerifier.take(0, 2));
+        assertEquals(4, recordedRequests.size());
+        assertEquals(2, RequestsVerifier.takeLast(2).size());
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void takesSubsetOfRequestsWithInvalidRangeThrowsError() throws Exception {
         RESTMockServer.whenRequested(pathEndsWith(path)).thenReturnString("a single call");
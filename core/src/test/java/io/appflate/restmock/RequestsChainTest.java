@@ -23,18 +23,26 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import io.appflate.restmock.utils.TestUtils;
 import okhttp3.Response;
 import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
 
 import static io.appflate.restmock.utils.RequestMatchers.pathEndsWith;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 
@@ -122,6 +130,59 @@ public class RequestsChainTest {
         assertEquals(lastResponse, response);
     }
 
+    @Test
+    public void concurrentRequestsGetConsecutiveResponses() throws Exception {
+        final int responses = 400;
+        String[] bodies = new String[responses];
+        for (int i = 0; i < responses; i++) {
+            bodies[i] = String.valueOf(i);
+        }
+        final MatchableCall call = RESTMockServer.whenRequested(pathEndsWith(path)).thenReturnString(bodies);
+        final Set<String> answered = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int j = 0; j < responses / 4; j++) {
+                        answered.add(call.nextResponse(null).getBody().readUtf8());
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(responses, answered.size());
+        assertEquals(responses, call.getInvocationCount());
+    }
+
+    @Test
+    public void delaysAreNotSetOnSharedResponses() throws Exception {
+        final MockResponse sharedResponse = new MockResponse().setBody("shared");
+        MockResponse templateResponse = new MockResponse().setBody("template");
+        MatchableCall templateCall = RESTMockServer.whenGET(pathEndsWith(path)).thenReturn(templateResponse).delayBody(TimeUnit.SECONDS, 5);
+        MatchableCall answerCall = RESTMockServer.whenPOST(pathEndsWith(path)).thenAnswer(new MockAnswer() {
+
+            @Override
+            public MockResponse answer(RecordedRequest request) {
+                return sharedResponse;
+            }
+        }).delayHeaders(TimeUnit.SECONDS, 5);
+
+        MockResponse first = templateCall.nextResponse(null);
+        MockResponse second = templateCall.nextResponse(null);
+        assertNotSame(first, second);
+        assertEquals(5, first.getBodyDelay(TimeUnit.SECONDS));
+        assertEquals("template", second.getBody().readUtf8());
+        assertEquals(0, templateResponse.getBodyDelay(TimeUnit.SECONDS));
+        assertEquals(5, answerCall.nextResponse(null).getHeadersDelay(TimeUnit.SECONDS));
+        assertEquals(0, sharedResponse.getHeadersDelay(TimeUnit.SECONDS));
+    }
+
     @Test
     public void multipleResponsesWithDifferentDelays() throws Exception {
         RESTMockServer.whenGET(pathEndsWith(path))
@@ -151,6 +212,41 @@ public class RequestsChainTest {
         assertEquals(500, b - a, 100);
     }
 
+    @Test
+    public void multipleResponsesWithDifferentThrottles() throws Exception {
+        char[] body = new char[1000];
+        Arrays.fill(body, 'a');
+        RESTMockServer.whenGET(pathEndsWith(path))
+                .thenReturnString(new String(body))
+                .throttleBody(TimeUnit.MILLISECONDS, 50, 100, 0);
+
+        long a = System.currentTimeMillis();
+        String response = Objects.requireNonNull(TestUtils.get(path).body()).string();
+        assertEquals(1000, response.length());
+        long b = System.currentTimeMillis();
+        assertEquals(500, b - a, 150);
+
+        a = System.currentTimeMillis();
+        response = Objects.requireNonNull(TestUtils.get(path).body()).string();
+        assertEquals(1000, response.length());
+        b = System.currentTimeMillis();
+        assertEquals(0, b - a, 150);
+    }
+
+    @Test
+    public void delaysSampledFromDistribution() throws Exception {
+        RESTMockServer.whenGET(pathEndsWith(path))
+                .thenReturnString("a single call")
+                .delayBody(TimeUnit.MILLISECONDS, 100)
+                .delayBody(LatencyDistribution.uniform(TimeUnit.MILLISECONDS, 300, 400).withSeed(1));
+
+        long a = System.currentTimeMillis();
+        String response = Objects.requireNonNull(TestUtils.get(path).body()).string();
+        assertEquals("a single call", response);
+        long b = System.currentTimeMillis();
+        assertTrue(b - a >= 400 && b - a < 700);
+    }
+
     @Test
     public void multipleResponsesWithOneDelay() throws Exception {
         RESTMockServer.whenGET(pathEndsWith(path))
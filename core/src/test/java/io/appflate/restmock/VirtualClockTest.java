@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 Appflate.io
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.appflate.restmock;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+public class VirtualClockTest {
+
+    @Test
+    public void delaysAreScaledToRealTime() {
+        MockResponse response = new MockResponse().setHeadersDelay(5, TimeUnit.SECONDS)
+            .setBodyDelay(250, TimeUnit.MILLISECONDS)
+            .throttleBody(1000, 1, TimeUnit.SECONDS);
+
+        new VirtualClock(100).scale(response);
+
+        assertEquals(50, response.getHeadersDelay(TimeUnit.MILLISECONDS));
+        assertEquals(2500, response.getBodyDelay(TimeUnit.MICROSECONDS));
+        assertEquals(100000, response.getThrottleBytesPerPeriod());
+        assertEquals(1000, response.getThrottlePeriod(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void unthrottledResponsesStayUnthrottled() {
+        MockResponse response = new MockResponse();
+
+        new VirtualClock(0.5).scale(response);
+
+        assertEquals(Long.MAX_VALUE, response.getThrottleBytesPerPeriod());
+    }
+
+    @Test
+    public void virtualTimeRunsFaster() throws Exception {
+        VirtualClock clock = new VirtualClock(100);
+        long start = clock.currentTimeMillis();
+        assertEquals(System.currentTimeMillis(), start, 50);
+
+        Thread.sleep(100);
+
+        assertEquals(10000, clock.currentTimeMillis() - start, 3000);
+    }
+
+    @Test
+    public void virtualTimeIsNotTruncatedToRealMilliseconds() {
+        VirtualClock clock = new VirtualClock(100);
+        long smallestStep = Long.MAX_VALUE;
+        long previous = clock.currentTimeMillis();
+        for (int i = 0; i < 20; i++) {
+            long current;
+            do {
+                current = clock.currentTimeMillis();
+            } while (current == previous);
+            smallestStep = Math.min(smallestStep, current - previous);
+            previous = current;
+        }
+
+        // truncating real time to milliseconds would make virtual time advance in steps of 100 ms
+        assertTrue("virtual time advanced by at least " + smallestStep + " ms", smallestStep < 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void timeScaleShouldBePositive() {
+        new VirtualClock(0);
+    }
+}
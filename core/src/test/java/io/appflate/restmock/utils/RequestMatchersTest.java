@@ -1,5 +1,6 @@
 package io.appflate.restmock.utils;
 
+import java.util.Arrays;
 import java.util.Collections;
 import okio.Buffer;
 import org.junit.Test;
@@ -14,6 +15,10 @@ import okhttp3.mockwebserver.RecordedRequest;
 
 import static io.appflate.restmock.utils.RequestMatchers.hasHeaderNames;
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNotSame;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertSame;
 import static junit.framework.TestCase.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -128,6 +133,57 @@ public class RequestMatchersTest {
         assertTrue(matcher.matches(request));
     }
 
+    @Test
+    public void allOfCombinesRouteHints() {
+        //when
+        RouteHint routeHint = RouteHint.of(RequestMatchers.allOf(RequestMatchers.isGET(),
+                                                                 RequestMatchers.pathStartsWith("/Users/"),
+                                                                 RequestMatchers.pathEndsWith("/Repos/")));
+
+        //then
+        assertEquals("GET", routeHint.getMethod());
+        assertEquals("users", routeHint.getFirstPathSegment());
+        assertEquals("repos", routeHint.getLastPathSegment());
+    }
+
+    @Test
+    public void partialSegmentsAreNotHinted() {
+        //when
+        RouteHint routeHint = RouteHint.of(RequestMatchers.allOf(RequestMatchers.pathStartsWith("/users"),
+                                                                 RequestMatchers.pathEndsWith("repos")));
+
+        //then
+        assertNull(routeHint.getMethod());
+        assertNull(routeHint.getFirstPathSegment());
+        assertNull(routeHint.getLastPathSegment());
+    }
+
+    @Test
+    public void parsedRequestIsSharedOnlyWhileTheRequestIsDispatched() {
+        //given
+        RecordedRequest request = createRecordedRequest("/Foo/b%20ar/?baz=boo");
+
+        //when
+        ParsedRequest.beginDispatch(request);
+        ParsedRequest parsedRequest;
+        try {
+            parsedRequest = ParsedRequest.of(request);
+
+            //then
+            assertSame(parsedRequest, ParsedRequest.of(request));
+            assertNotSame(parsedRequest, ParsedRequest.of(createRecordedRequest("/Foo/b%20ar/?baz=boo")));
+        } finally {
+            ParsedRequest.endDispatch();
+        }
+        assertNotSame(parsedRequest, ParsedRequest.of(request));
+        assertEquals("/foo/b%20ar/?baz=boo", parsedRequest.getLowerCasePath());
+        assertEquals("/Foo/b%20ar", parsedRequest.getPathWithoutQuery());
+        assertEquals(Arrays.asList("Foo", "b ar"), parsedRequest.getPathSegments());
+        assertSame(parsedRequest.getPathSegments(), parsedRequest.getPathSegments());
+        assertEquals("foo", parsedRequest.getFirstPathSegment());
+        assertEquals("?baz=boo", parsedRequest.getLastPathSegment());
+    }
+
     private RecordedRequest createRecordedRequest(String path, String... headerNamesAndValues) {
         Socket socket = Mockito.mock(Socket.class);
         when(socket.getLocalAddress()).thenReturn(mock(InetAddress.class));